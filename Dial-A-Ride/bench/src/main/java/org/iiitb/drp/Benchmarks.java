@@ -0,0 +1,23 @@
+package org.iiitb.drp;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line, as org.openjdk.jmh.Main
+ * does, always profiling allocations so that the allocation rate is reported
+ * next to the throughput
+ */
+public class Benchmarks
+{
+	public static void main(String[] args) throws RunnerException,
+			CommandLineOptionException
+	{
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+}
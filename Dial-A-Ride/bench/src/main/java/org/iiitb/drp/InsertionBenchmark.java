@@ -0,0 +1,81 @@
+package org.iiitb.drp;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.iiitb.graphs.DistanceMatrix;
+import org.iiitb.graphs.ShortestPathBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Evaluation of the cheapest insertion of a request into the route of a
+ * single taxi already holding stops stops
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class InsertionBenchmark
+{
+	@Param({ "10", "100", "1000" })
+	public int stops;
+
+	private static final int nCandidates = 64; // Requests evaluated in turn
+
+	Taxi taxi;
+	Request[] candidates;
+	int next;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		MyLogger.setLevel("WARNING");
+		DistanceMatrix distances = new DistanceMatrix(
+				ShortestPathBenchmark.generate("grid", 100, 1), 1);
+		int V = distances.V();
+		int maxTime = 0;
+		for (int v = 0; v < V; v++)
+			for (int w = 0; w < V; w++)
+				maxTime = Math.max(maxTime, distances.distance(v, w)
+						* DialARide.timePerKm);
+
+		// One request every period, its pickup due within maxTime. The taxi
+		// can always make it from the previous drop, so each is appended
+		Random random = new Random(1);
+		int period = 2 * maxTime + 1;
+		taxi = new Taxi(random.nextInt(V), 4, distances);
+		for (int k = 0; k < stops / 2; k++)
+		{
+			Stop pickUp = new Stop(random.nextInt(V), k * period, k * period
+					+ maxTime, k, StopType.PICKUP, distances);
+			Stop drop = new Stop(random.nextInt(V), k * period, (k + 1)
+					* period - 1, k, StopType.DROP, distances);
+			if (!taxi.schedule(new Request(pickUp, drop)))
+				throw new IllegalStateException("Request " + k
+						+ " could not be scheduled");
+		}
+
+		// Requests that may be picked up anytime in the day of the taxi
+		int end = stops / 2 * period;
+		candidates = new Request[nCandidates];
+		for (int i = 0; i < nCandidates; i++)
+			candidates[i] = new Request(new Stop(random.nextInt(V), 0, end,
+					stops + i, StopType.PICKUP, distances), new Stop(
+					random.nextInt(V), 0, end + maxTime, stops + i,
+					StopType.DROP, distances));
+	}
+
+	@Benchmark
+	public Insertion evaluate()
+	{
+		next = (next + 1) % nCandidates;
+		return taxi.evaluate(candidates[next]);
+	}
+}
@@ -0,0 +1,92 @@
+package org.iiitb.drp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.iiitb.graphs.CSRDigraph;
+import org.iiitb.graphs.DistanceMatrix;
+import org.iiitb.graphs.EdgeWeightedDigraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Scheduling of all the requests of a bundled sample input by its whole
+ * fleet. The samples are looked up in the directory named by the drp.samples
+ * system property, the parent of the working directory by default
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class SchedulingBenchmark
+{
+	@Param({ "sampleInput.txt", "sampleInput7.txt.big", "sampleInput9.txt" })
+	public String input;
+
+	@Param({ "1", "4" })
+	public int dispatchThreads;
+
+	EdgeWeightedDigraph cityMap;
+	DistanceMatrix distances;
+	int vehicleCapacity;
+	int[] taxiLocations;
+	int[][] requestFields; // from to et lt of each request
+
+	// Fresh taxis and requests for every invocation, scheduling mutating both
+	ArrayList<Taxi> taxis;
+	ArrayList<Request> requests;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		MyLogger.setLevel("WARNING");
+		InputReader in = new InputReader(new File(System.getProperty(
+				"drp.samples", ".."), input).getPath());
+		int nLocations = in.nextInt();
+		int nVehicles = in.nextInt();
+		vehicleCapacity = in.nextInt();
+		int nRequests = in.nextInt();
+		int nEdges = in.atEndOfLine() ? -1 : in.nextInt();
+		cityMap = DialARide.readCityMap(in, nLocations, nEdges);
+		distances = new DistanceMatrix(new CSRDigraph(cityMap), 1);
+
+		taxiLocations = new int[nVehicles];
+		for (int i = 0; i < nVehicles; i++)
+			taxiLocations[i] = in.nextInt();
+		ArrayList<int[]> fields = new ArrayList<>();
+		for (int i = 0; nRequests < 0 ? in.hasNext() : i < nRequests; i++)
+			fields.add(new int[] { in.nextInt(), in.nextInt(), in.nextInt(),
+					in.nextInt() });
+		in.close();
+		requestFields = fields.toArray(new int[fields.size()][]);
+	}
+
+	@Setup(Level.Invocation)
+	public void newDay() throws IOException
+	{
+		taxis = new ArrayList<Taxi>();
+		for (int location : taxiLocations)
+			taxis.add(new Taxi(location, vehicleCapacity, distances));
+		requests = new ArrayList<>();
+		for (int i = 0; i < requestFields.length; i++)
+		{
+			int[] f = requestFields[i];
+			requests.add(DialARide.newRequest(f[0], f[1], f[2], f[3], i,
+					distances));
+		}
+	}
+
+	@Benchmark
+	public DialARide schedule() throws IOException
+	{
+		return new DialARide(requests, taxis, cityMap, dispatchThreads);
+	}
+}
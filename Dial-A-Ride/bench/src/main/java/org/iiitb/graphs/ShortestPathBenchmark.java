@@ -0,0 +1,244 @@
+package org.iiitb.graphs;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.iiitb.drp.InputGenerator.RoadNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Shortest path trees, all pairs distances and point to point distances on
+ * generated city maps
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ShortestPathBenchmark
+{
+	@State(Scope.Thread)
+	public static class SingleSource
+	{
+		@Param({ "grid", "random" })
+		public String shape;
+
+		@Param({ "100", "1000", "10000" })
+		public int V;
+
+		EdgeWeightedDigraph G;
+		CSRDigraph csr;
+		DijkstraSP workspace;
+		DialSP dial; // Workspace for integer weights
+		int source;
+
+		@Setup
+		public void setUp()
+		{
+			G = generate(shape, V, 1);
+			csr = new CSRDigraph(G);
+			workspace = new DijkstraSP(csr);
+			dial = new DialSP(csr);
+		}
+
+		// Rotate the source so that no single tree is measured
+		int nextSource()
+		{
+			source = (source + 1) % G.V();
+			return source;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class AllPairs
+	{
+		@Param({ "grid", "random" })
+		public String shape;
+
+		@Param({ "100", "1000" })
+		public int V;
+
+		@Param({ "1", "4" })
+		public int nThreads;
+
+		CSRDigraph csr;
+
+		@Setup
+		public void setUp()
+		{
+			csr = new CSRDigraph(generate(shape, V, 1));
+		}
+	}
+
+	/**
+	 * Point to point queries on the road networks of InputGenerator. The
+	 * random map is left out : it has no small separators, so contraction
+	 * builds a dense core and takes minutes from a few thousand locations
+	 */
+	@State(Scope.Thread)
+	public static class PointToPoint
+	{
+		@Param({ "grid", "ring", "geometric" })
+		public String shape;
+
+		@Param({ "1000", "10000" })
+		public int V;
+
+		@Param({ "alt", "ch" })
+		public String oracle;
+
+		CSRDigraph csr;
+		DistanceOracle distances;
+		int[] sources, targets; // Of the queries, in turn
+		int query;
+
+		/**
+		 * Build the oracle and check it against {@link DijkstraSP} on the
+		 * pairs queried, so that a wrong answer fails the run rather than
+		 * being timed
+		 */
+		@Setup
+		public void setUp()
+		{
+			csr = new CSRDigraph(RoadNetwork.of(shape, V, 1).graph(
+					new Random(1)));
+			if (oracle.equals("alt"))
+				distances = new BidirectionalALT(csr, 8);
+			else
+				distances = new ContractionHierarchy(csr,
+						ContractionHierarchy.WITNESS_LIMIT);
+
+			Random random = new Random(2);
+			sources = new int[1024];
+			targets = new int[sources.length];
+			DijkstraSP sp = new DijkstraSP(csr);
+			for (int i = 0; i < sources.length; i++)
+			{
+				// Locations are numbered from 1
+				sources[i] = 1 + random.nextInt(csr.V() - 1);
+				targets[i] = 1 + random.nextInt(csr.V() - 1);
+				if (i % 64 != 0)
+					continue;
+				sp.search(sources[i]);
+				for (int w = 0; w < csr.V(); w++)
+				{
+					int expected = sp.hasPathTo(w) ? (int) sp.distTo(w)
+							: Integer.MAX_VALUE;
+					int d = distances.distance(sources[i], w);
+					if (d != expected)
+						throw new IllegalStateException(oracle + " : "
+								+ sources[i] + "-" + w + " is " + d
+								+ ", not " + expected);
+				}
+			}
+		}
+
+		int next()
+		{
+			query = (query + 1) % sources.length;
+			return query;
+		}
+	}
+
+	@Benchmark
+	public DijkstraSP adjacencyLists(SingleSource s)
+	{
+		return new DijkstraSP(s.G, s.nextSource());
+	}
+
+	@Benchmark
+	public DijkstraSP csr(SingleSource s)
+	{
+		return new DijkstraSP(s.csr, s.nextSource());
+	}
+
+	@Benchmark
+	public DijkstraSP csrReused(SingleSource s)
+	{
+		s.workspace.search(s.nextSource());
+		return s.workspace;
+	}
+
+	@Benchmark
+	public DialSP csrDial(SingleSource s)
+	{
+		s.dial.search(s.nextSource());
+		return s.dial;
+	}
+
+	@Benchmark
+	public CSRDigraph csrBuild(SingleSource s)
+	{
+		return new CSRDigraph(s.G);
+	}
+
+	@Benchmark
+	public DistanceMatrix distanceMatrix(AllPairs s)
+	{
+		return new DistanceMatrix(s.csr, s.nThreads);
+	}
+
+	@Benchmark
+	public int pointToPoint(PointToPoint s)
+	{
+		int i = s.next();
+		return s.distances.distance(s.sources[i], s.targets[i]);
+	}
+
+	/**
+	 * Generate a strongly connected city map of about V locations with road
+	 * lengths of 1 to 10
+	 *
+	 * @param shape grid : roads both ways between neighbours of a square
+	 *            grid. random : a ring of one way roads plus three more roads
+	 *            out of every location
+	 * @param V Number of locations
+	 * @param seed Seed of the road lengths and ends
+	 * @return The map
+	 */
+	public static EdgeWeightedDigraph generate(String shape, int V, long seed)
+	{
+		Random random = new Random(seed);
+		EdgeWeightedDigraph G;
+		if (shape.equals("grid"))
+		{
+			int side = (int) Math.ceil(Math.sqrt(V));
+			G = new EdgeWeightedDigraph(side * side);
+			for (int r = 0; r < side; r++)
+				for (int c = 0; c < side; c++)
+				{
+					int v = r * side + c;
+					if (c + 1 < side)
+						addRoad(G, v, v + 1, 1 + random.nextInt(10));
+					if (r + 1 < side)
+						addRoad(G, v, v + side, 1 + random.nextInt(10));
+				}
+		}
+		else if (shape.equals("random"))
+		{
+			G = new EdgeWeightedDigraph(V);
+			for (int v = 0; v < V; v++)
+			{
+				G.addEdge(new DirectedEdge(v, (v + 1) % V,
+						1 + random.nextInt(10)));
+				for (int i = 0; i < 3; i++)
+					G.addEdge(new DirectedEdge(v, random.nextInt(V),
+							1 + random.nextInt(10)));
+			}
+		}
+		else
+			throw new IllegalArgumentException("Unknown map shape : " + shape);
+		return G;
+	}
+
+	private static void addRoad(EdgeWeightedDigraph G, int v, int w,
+			double length)
+	{
+		G.addEdge(new DirectedEdge(v, w, length));
+		G.addEdge(new DirectedEdge(w, v, length));
+	}
+}
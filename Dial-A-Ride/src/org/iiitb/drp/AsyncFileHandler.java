@@ -0,0 +1,190 @@
+package org.iiitb.drp;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * A log handler that hands records over to a single writer thread through a
+ * bounded ring buffer. The logging thread only copies a reference; the
+ * writer formats whatever has accumulated and writes it to the file in one
+ * batch. Logging threads wait if the writer falls a whole buffer behind, so
+ * no record is dropped.
+ * 
+ * @author kempa
+ * 
+ */
+class AsyncFileHandler extends Handler
+{
+	private final LogRecord[] ring;
+	private long head; // Number of records taken by the writer
+	private long tail; // Number of records published
+	private boolean closed;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Condition written = lock.newCondition();
+	private long nWritten; // Number of records written to the file
+
+	private final Writer out;
+	private final Thread writer;
+
+	/**
+	 * @param fileName File the log is written to. Truncated if it exists
+	 * @param capacity Number of records the ring buffer holds
+	 * @throws IOException
+	 */
+	AsyncFileHandler(String fileName, int capacity) throws IOException
+	{
+		ring = new LogRecord[capacity];
+		out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+				fileName)), 1 << 16);
+		writer = new Thread("log writer")
+		{
+			@Override
+			public void run()
+			{
+				drain();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void publish(LogRecord record)
+	{
+		if (!isLoggable(record))
+			return;
+		lock.lock();
+		try
+		{
+			while (tail - head == ring.length && !closed)
+				notFull.awaitUninterruptibly();
+			if (closed)
+				return;
+			ring[(int) (tail++ % ring.length)] = record;
+			notEmpty.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	// Body of the writer thread
+	private void drain()
+	{
+		LogRecord[] batch = new LogRecord[ring.length];
+		while (true)
+		{
+			int n = 0;
+			lock.lock();
+			try
+			{
+				while (head == tail && !closed)
+					notEmpty.awaitUninterruptibly();
+				if (head == tail)
+					return; // Closed and nothing left to write
+				while (head < tail)
+				{
+					int i = (int) (head++ % ring.length);
+					batch[n++] = ring[i];
+					ring[i] = null;
+				}
+				notFull.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			try
+			{
+				for (int i = 0; i < n; i++)
+				{
+					out.write(getFormatter().format(batch[i]));
+					batch[i] = null;
+				}
+				out.flush();
+			}
+			catch (IOException e)
+			{
+				reportError(null, e, ErrorManager.WRITE_FAILURE);
+			}
+
+			lock.lock();
+			try
+			{
+				nWritten += n;
+				written.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Wait until the records published so far are written to the file
+	 */
+	@Override
+	public void flush()
+	{
+		lock.lock();
+		try
+		{
+			long published = tail;
+			while (nWritten < published && writer.isAlive())
+				written.awaitUninterruptibly();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write out the records published so far and stop the writer thread
+	 */
+	@Override
+	public void close()
+	{
+		lock.lock();
+		try
+		{
+			if (closed)
+				return;
+			closed = true;
+			notEmpty.signal();
+			notFull.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		try
+		{
+			writer.join();
+			out.close();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e)
+		{
+			reportError(null, e, ErrorManager.CLOSE_FAILURE);
+		}
+	}
+}
@@ -1,26 +1,42 @@
 package org.iiitb.drp;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
-import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 
-import org.iiitb.graphs.DijkstraSP;
+import javax.management.JMException;
+
+import org.iiitb.drp.RequestRegistry.State;
+import org.iiitb.graphs.BidirectionalALT;
+import org.iiitb.graphs.CSRDigraph;
+import org.iiitb.graphs.ContractionHierarchy;
 import org.iiitb.graphs.DirectedEdge;
+import org.iiitb.graphs.DistanceMatrix;
+import org.iiitb.graphs.DistanceOracle;
+import org.iiitb.graphs.DistanceSnapshot;
 import org.iiitb.graphs.EdgeWeightedDigraph;
+import org.iiitb.graphs.SPTreeCache;
+import org.iiitb.graphs.ZonePartition;
 
 public class DialARide
 {
 	EdgeWeightedDigraph cityMap;
 	ArrayList<Request> requests;
-	LinkedList<Request> unservicedRequests;
+	RequestRegistry registry; // State of every request
 	ArrayList<Taxi> taxis;
+	ArrayList<ArrayList<Stop>> retired; // Of each taxi, by the rolling
+										// horizon
 	int revenue;
 	private Logger logger;
+	private SchedulerMetrics metrics;
 	static final int dayStartTime = 0;
 	static final int dayEndTime = 24 * 60;
 	final static int timePerKm = 2; // minutes
@@ -28,24 +44,83 @@ public class DialARide
 
 	final static double deviationFactor = 3/2;
 
+	final static int slotLength = 15; // minutes. Granularity of TaxiIndex
+	final static int nearestTaxis = 8; // Taxis first tried by schedule3
+	final static int horizonOverlap = 60; // minutes. Stops still open to
+											// change when a slice starts
+	final static int regretBatch = 30; // minutes. Of pickup times inserted
+										// together by scheduleRegret
+
 	public DialARide(ArrayList<Request> requests, ArrayList<Taxi> taxis,
 			EdgeWeightedDigraph cityMap) throws SecurityException, IOException
+	{
+		this(requests, taxis, cityMap, 1);
+	}
+
+	/**
+	 * @param dispatchThreads Number of threads evaluating taxis for a request
+	 *            concurrently. 1 schedules through {@link #schedule1()}, more
+	 *            through {@link #schedule4(ForkJoinPool)}
+	 */
+	public DialARide(ArrayList<Request> requests, ArrayList<Taxi> taxis,
+			EdgeWeightedDigraph cityMap, int dispatchThreads)
+			throws SecurityException, IOException
+	{
+		this(requests, taxis, cityMap, dispatchThreads, 0, null, 1);
+	}
+
+	/**
+	 * @param dispatchThreads Number of threads evaluating taxis for a request
+	 *            concurrently. 1 schedules through {@link #schedule1()}, more
+	 *            through {@link #schedule4(ForkJoinPool)}
+	 * @param horizon Length in minutes of the slices of the day scheduled
+	 *            one after the other by {@link #scheduleRollingHorizon}. 0
+	 *            schedules the whole day at once
+	 * @param zones Zones scheduled apart by {@link #scheduleZones}. null
+	 *            for none. Takes precedence over regret and horizon
+	 * @param regret Number of taxis the regret of requests is worked out
+	 *            over by {@link #scheduleRegret}. 1 for no regret
+	 */
+	public DialARide(ArrayList<Request> requests, ArrayList<Taxi> taxis,
+			EdgeWeightedDigraph cityMap, int dispatchThreads, int horizon,
+			ZonePartition zones, int regret) throws SecurityException,
+			IOException
 	{
 		// sort requests by their earliest time
 		this.requests = requests;
 		Collections.sort(this.requests);
-		unservicedRequests = new LinkedList<Request>(requests);
+		registry = new RequestRegistry(this.requests);
 		revenue = 0;
 		this.taxis = taxis;
 		this.cityMap = cityMap;
 		logger = MyLogger.getInstance();
+		metrics = SchedulerMetrics.getInstance();
 
-		schedule1();
+		ForkJoinPool pool = dispatchThreads > 1 ? new ForkJoinPool(
+				dispatchThreads) : null;
+		try
+		{
+			if (zones != null)
+				scheduleZones(zones, pool);
+			else if (regret > 1)
+				scheduleRegret(regret, horizon);
+			else if (horizon > 0)
+				scheduleRollingHorizon(horizon, pool);
+			else if (pool != null)
+				schedule4(pool);
+			else
+				schedule1();
+		}
+		finally
+		{
+			if (pool != null)
+				pool.shutdown();
+		}
 		for (Taxi t : taxis)
 			t.check();
 
 		logger.info("\nUnserviced Requests");
-		for (Request r : unservicedRequests)
+		for (Request r : registry.in(State.REJECTED))
 			logger.info(r.toString());
 		logger.info("");
 	}
@@ -55,13 +130,7 @@ public class DialARide
 	{
 		// Method 1
 		for (Request request : requests)
-			for (Taxi taxi : taxis)
-				if (taxi.schedule(request))
-				{
-					unservicedRequests.remove(request);
-					revenue += request.getCost();
-					break;
-				}
+			dispatch(request, null);
 	}
 
 	public void schedule2()
@@ -77,10 +146,9 @@ public class DialARide
 			{
 				Request request = requests.get(j);
 				if (taxi.schedule(request))
-				{
-					revenue += request.getCost();
-					unservicedRequests.remove(request);
-				}
+					serviced(request, taxi);
+				else
+					registry.reject(request);
 			}
 			j = ++t;
 		}
@@ -88,22 +156,291 @@ public class DialARide
 
 	public void schedule3()
 	{
+		TaxiIndex index = new TaxiIndex(taxis, slotLength);
 		for (Request request : requests)
 		{
-			LinkedList<NearestTaxi> nearestTaxis = new LinkedList<NearestTaxi>();
-			for (Taxi taxi : taxis)
-				nearestTaxis.add(new NearestTaxi(request.pickUp.et,
-						request.pickUp, taxi));
-			Collections.sort(nearestTaxis);
+			long start = System.nanoTime();
+			// Try the taxis nearest to the pickup point first. Look farther
+			// only if none of them can service the request
+			int tried = 0;
+			Taxi taxi = null;
+			search: for (int k = nearestTaxis; tried < taxis.size(); k *= 2)
+			{
+				int[] nearest = index.nearest(request.pickUp.et,
+						request.pickUp, k);
+				for (; tried < nearest.length; tried++)
+					if (taxis.get(nearest[tried]).schedule(request))
+					{
+						index.update(nearest[tried], request.pickUp.at);
+						taxi = taxis.get(nearest[tried]);
+						break search;
+					}
+			}
+			if (taxi != null)
+				serviced(request, taxi);
+			else
+				registry.reject(request);
+			metrics.dispatched(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * For every request, evaluate its insertion into all taxis concurrently
+	 * and commit it to the one for which it adds the least distance. Ties go
+	 * to the taxi listed first, so the schedule does not depend on the
+	 * number of threads or their timing. Assumes that requests are ordered by
+	 * their earliest pickup time
+	 * 
+	 * @param pool Threads evaluating the taxis
+	 */
+	public void schedule4(ForkJoinPool pool)
+	{
+		for (Request request : requests)
+			dispatch(request, pool);
+	}
+
+	/**
+	 * Schedule the day a slice at a time, each slice being the requests
+	 * wanting to be picked up within horizon minutes. Before a slice is
+	 * scheduled, stops done earlier than horizonOverlap minutes before it
+	 * starts are retired from the routes, so that insertions only scan the
+	 * stops that can still change. Slices depend on where the taxis end up
+	 * after the previous one, so they are scheduled in order. Within a slice
+	 * requests are scheduled as by {@link #schedule1()}, or as by
+	 * {@link #schedule4(ForkJoinPool)} given a pool. Assumes that requests
+	 * are ordered by their earliest pickup time
+	 * 
+	 * @param horizon Length of a slice, in minutes
+	 * @param pool Threads evaluating the taxis. null to schedule the
+	 *            requests of a slice sequentially
+	 */
+	public void scheduleRollingHorizon(int horizon, ForkJoinPool pool)
+	{
+		scheduleSlices(horizon, true, pool, null);
+	}
+
+	/**
+	 * Insert the requests by regret, see {@link RegretInsertion}, a slice of
+	 * pickup times at a time. Assumes that requests are ordered by their
+	 * earliest pickup time
+	 * 
+	 * @param k Number of cheapest taxis the regret is worked out over
+	 * @param horizon Length in minutes of the slices, stops being retired
+	 *            between them as by {@link #scheduleRollingHorizon}. 0 for
+	 *            slices of regretBatch minutes, retiring nothing
+	 */
+	public void scheduleRegret(int k, int horizon)
+	{
+		RegretInsertion regret = new RegretInsertion(taxis, k);
+		if (horizon > 0)
+			scheduleSlices(horizon, true, null, regret);
+		else
+			scheduleSlices(regretBatch, false, null, regret);
+	}
 
-			for (NearestTaxi taxi : nearestTaxis)
-				if (taxi.taxi.schedule(request))
+	// Schedule the requests wanting to be picked up within each slice of
+	// length minutes in turn, through regret if given and dispatch()
+	// otherwise
+	private void scheduleSlices(int length, boolean retire, ForkJoinPool pool,
+			RegretInsertion regret)
+	{
+		if (retire)
+		{
+			retired = new ArrayList<ArrayList<Stop>>();
+			for (int i = 0; i < taxis.size(); i++)
+				retired.add(new ArrayList<Stop>());
+		}
+		int next = 0;
+		for (int start = dayStartTime; next < requests.size(); start += length)
+		{
+			if (retire)
+				for (int i = 0; i < taxis.size(); i++)
+					for (Stop s : taxis.get(i).retire(start - horizonOverlap))
+					{
+						// Its stops can't be moved any more
+						if (s.stopType == StopType.PICKUP)
+							registry.pickUp(registry.request(s.requestId));
+						retired.get(i).add(s);
+					}
+			int end = next;
+			while (end < requests.size()
+					&& requests.get(end).pickUp.et < start + length)
+				end++;
+			if (regret == null)
+				for (; next < end; next++)
+					dispatch(requests.get(next), pool);
+			else
+			{
+				for (Insertion insertion : regret.insert(requests.subList(next,
+						end)))
+					serviced(insertion.request, insertion.taxi);
+				for (; next < end; next++)
+					if (registry.state(requests.get(next)) == State.PENDING)
+						registry.reject(requests.get(next));
+			}
+		}
+	}
+
+	/**
+	 * Schedule every zone on a thread of its own. The requests picked up and
+	 * dropped within a zone go to the taxis starting in it, the first that
+	 * can service a request getting it as in {@link #schedule1()}. The zones
+	 * share nothing but the distances, so they are scheduled independently.
+	 * Requests crossing zones, and those their zone could not service, are
+	 * then scheduled over all taxis as by {@link #schedule1()}, or as by
+	 * {@link #schedule4(ForkJoinPool)} given a pool. Assumes that requests
+	 * are ordered by their earliest pickup time
+	 * 
+	 * @param zones The zones
+	 * @param pool Threads evaluating the taxis for the requests left over.
+	 *            May be null
+	 */
+	public void scheduleZones(ZonePartition zones, ForkJoinPool pool)
+	{
+		ArrayList<ArrayList<Taxi>> zoneTaxis = new ArrayList<>();
+		ArrayList<ArrayList<Request>> zoneRequests = new ArrayList<>();
+		for (int z = 0; z < zones.zones(); z++)
+		{
+			zoneTaxis.add(new ArrayList<Taxi>());
+			zoneRequests.add(new ArrayList<Request>());
+		}
+		for (Taxi t : taxis)
+			zoneTaxis.get(zones.zone(t.stopBefore(0).location)).add(t);
+		ArrayList<Request> leftOver = new ArrayList<>();
+		for (Request r : requests)
+		{
+			int z = zones.zone(r.pickUp.location);
+			if (z == zones.zone(r.drop.location))
+				zoneRequests.get(z).add(r);
+			else
+				leftOver.add(r);
+		}
+		int nCrossing = leftOver.size();
+
+		ForkJoinPool zonePool = new ForkJoinPool(zones.zones());
+		try
+		{
+			ArrayList<ZoneScheduler> schedulers = new ArrayList<>();
+			for (int z = 0; z < zones.zones(); z++)
+			{
+				ZoneScheduler scheduler = new ZoneScheduler(zoneTaxis.get(z),
+						zoneRequests.get(z));
+				zonePool.execute(scheduler);
+				schedulers.add(scheduler);
+			}
+			for (ZoneScheduler scheduler : schedulers)
+			{
+				leftOver.addAll(scheduler.join());
+				for (int i = 0; i < scheduler.serviced.size(); i++)
+					serviced(scheduler.serviced.get(i),
+							scheduler.servicedBy.get(i));
+			}
+		}
+		finally
+		{
+			zonePool.shutdown();
+		}
+
+		logger.info(zones.toString());
+		logger.info(requests.size() - nCrossing + " requests within zones, "
+				+ nCrossing + " across, " + leftOver.size()
+				+ " left to schedule over all taxis");
+		Collections.sort(leftOver);
+		for (Request r : leftOver)
+			dispatch(r, pool);
+	}
+
+	/**
+	 * Assign a request to the first taxi that can service it or, given a
+	 * pool, to the one for which it adds the least distance. Ties go to the
+	 * taxi listed first, so the schedule does not depend on the number of
+	 * threads or their timing.
+	 * 
+	 * @param request The request
+	 * @param pool Threads evaluating the taxis concurrently. May be null
+	 */
+	private void dispatch(Request request, ForkJoinPool pool)
+	{
+		long start = System.nanoTime();
+		Taxi serviced = null;
+		if (pool == null)
+		{
+			for (Taxi taxi : taxis)
+				if (taxi.schedule(request))
 				{
-					unservicedRequests.remove(request);
-					revenue += request.getCost();
+					serviced = taxi;
 					break;
 				}
 		}
+		else
+		{
+			Insertion best = pool.invoke(new CheapestInsertion(taxis,
+					request, 0, taxis.size()));
+			if (best != null)
+			{
+				best.taxi.commit(best);
+				serviced = best.taxi;
+			}
+		}
+		if (serviced != null)
+			serviced(request, serviced);
+		else
+			registry.reject(request);
+		metrics.dispatched(System.nanoTime() - start);
+	}
+
+	// Record that a taxi has been given a request
+	void serviced(Request request, Taxi taxi)
+	{
+		registry.assign(request, taxi);
+		revenue += request.getCost();
+	}
+
+	/**
+	 * Withdraw a request. It is taken out of the route of its taxi if it was
+	 * assigned one
+	 * 
+	 * @param request The request
+	 * @throws IllegalArgumentException If the request has been picked up
+	 */
+	public void cancel(Request request)
+	{
+		if (registry.state(request) == State.PICKED_UP)
+			throw new IllegalArgumentException("Already picked up : "
+					+ request);
+		if (registry.state(request) == State.ASSIGNED)
+		{
+			taxi(registry.taxi(request)).withdraw(request);
+			revenue -= request.getCost();
+		}
+		registry.cancel(request);
+	}
+
+	/**
+	 * @param id Id of a taxi
+	 * @return The taxi
+	 */
+	Taxi taxi(int id)
+	{
+		for (Taxi t : taxis)
+			if (t.getId() == id)
+				return t;
+		throw new IllegalArgumentException("No taxi " + id);
+	}
+
+	/**
+	 * Improve the schedule by local search, see {@link LocalSearch}, until no
+	 * move improves it or the budget is spent
+	 * 
+	 * @param budgetMillis Wall-clock time allowed, in milliseconds
+	 */
+	public void improve(long budgetMillis)
+	{
+		LocalSearch search = new LocalSearch(this);
+		search.run(budgetMillis);
+		for (Taxi t : taxis)
+			t.check();
+		logger.info(search.toString());
 	}
 
 	public void logReport()
@@ -123,8 +460,11 @@ public class DialARide
 		}
 		logger.info("");
 
-		logger.info(requests.size() - unservicedRequests.size()
-				+ " requests out of " + requests.size() + " serviced.");
+		logger.info(registry.count(State.ASSIGNED)
+				+ registry.count(State.PICKED_UP) + " requests out of "
+				+ registry.size() + " serviced.");
+		if (registry.count(State.CANCELLED) > 0)
+			logger.info(registry.count(State.CANCELLED) + " cancelled.");
 		logger.info(nTaxi + " taxis out of " + taxis.size() + " used");
 		logger.info("");
 
@@ -135,8 +475,10 @@ public class DialARide
 		logger.info("");
 
 		int sum = 0;
-		for (Request r : requests)
-			sum += r.getCost();
+		for (State state : State.values())
+			if (state != State.CANCELLED)
+				for (Request r : registry.in(state))
+					sum += r.getCost();
 		logger.info("Maximum revenue possible = " + sum);
 		logger.info("Total revenue = " + revenue);
 	}
@@ -145,8 +487,12 @@ public class DialARide
 	{
 		String str = "";
 		int revenue = 0;
-		for (Taxi t : taxis)
+		for (int i = 0; i < taxis.size(); i++)
 		{
+			Taxi t = taxis.get(i);
+			if (retired != null)
+				for (Stop s : retired.get(i))
+					str += s.location + " " + s.at + " ";
 			for (Stop s : t.route)
 				str += s.location + " " + s.at + " ";
 			str += t.revenue + "\n";
@@ -158,113 +504,433 @@ public class DialARide
 
 	public static void main(String[] args) throws IOException
 	{
-		if (args.length < 1)
+		// Usage : DialARide [-cache MB] [-threads n] [-dispatch n] [-log level]
+		// [-snapshot file] [-online stdin|port] [-improve ms]
+		// [-horizon minutes] [-zones n] [-regret k] [-alt landmarks]
+		// [-ch witnessLimit] inputFile
+		// -cache : Compute shortest paths on demand, caching at most MB
+		// megabytes of them, instead of precomputing all of them
+		// -threads : Number of threads precomputing shortest paths. Defaults
+		// to the number of processors
+		// -dispatch : Number of threads evaluating taxis for a request
+		// concurrently. Defaults to 1, scheduling requests sequentially
+		// -log : Level of the log, INFO by default. TRACE also logs every
+		// insertion attempt
+		// -snapshot : Map the precomputed shortest paths from file, along
+		// with the city map, which is then not parsed. If it is missing or
+		// not of this city map, compute them and save them there
+		// -online : Dispatch the requests of inputFile as they are read, then
+		// those arriving on the standard input or on a local port, writing
+		// back a decision for each. See OnlineDispatcher.serve()
+		// -improve : Improve the schedule by local search for at most ms
+		// milliseconds
+		// -horizon : Schedule the day in slices of this many minutes, see
+		// scheduleRollingHorizon()
+		// -zones : Split the city map into this many zones scheduled
+		// concurrently, see scheduleZones()
+		// -regret : Insert the requests with the largest regret over this
+		// many taxis first, see scheduleRegret()
+		// -alt : Find each shortest path when it is asked for, by A* with
+		// this many landmarks, instead of precomputing all of them. See
+		// BidirectionalALT
+		// -ch : Find shortest paths through a contraction hierarchy of the
+		// city map, built giving up on witness searches after this many
+		// vertices. See ContractionHierarchy. 500 is a good start
+		//
+		// The input starts with the line
+		// nLocations nVehicles vehicleCapacity nRequests [nEdges]
+		// Without nEdges, the city map follows as an nLocations x nLocations
+		// matrix of distances, -1 where there is no road. With it, the map is
+		// nEdges lines of 'from to distance'. Then come the start locations of
+		// the vehicles, followed by the requests, one 'from to et lt' a line.
+		// A negative nRequests reads requests until the end of the input.
+		long cacheBytes = 0;
+		int nLandmarks = 0;
+		int witnessLimit = 0;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		int dispatchThreads = 1;
+		String logLevel = "INFO";
+		String snapshot = null;
+		String online = null;
+		long improveMillis = 0;
+		int horizon = 0;
+		int nZones = 1;
+		int regret = 1;
+		int a = 0;
+		for (; a < args.length - 1 && args[a].startsWith("-"); a += 2)
+			if (args[a].equals("-cache"))
+				cacheBytes = Long.parseLong(args[a + 1]) * 1024 * 1024;
+			else if (args[a].equals("-threads"))
+				nThreads = Integer.parseInt(args[a + 1]);
+			else if (args[a].equals("-dispatch"))
+				dispatchThreads = Integer.parseInt(args[a + 1]);
+			else if (args[a].equals("-log"))
+				logLevel = args[a + 1];
+			else if (args[a].equals("-snapshot"))
+				snapshot = args[a + 1];
+			else if (args[a].equals("-online"))
+				online = args[a + 1];
+			else if (args[a].equals("-improve"))
+				improveMillis = Long.parseLong(args[a + 1]);
+			else if (args[a].equals("-horizon"))
+				horizon = Integer.parseInt(args[a + 1]);
+			else if (args[a].equals("-zones"))
+				nZones = Integer.parseInt(args[a + 1]);
+			else if (args[a].equals("-regret"))
+				regret = Integer.parseInt(args[a + 1]);
+			else if (args[a].equals("-alt"))
+				nLandmarks = Integer.parseInt(args[a + 1]);
+			else if (args[a].equals("-ch"))
+				witnessLimit = Integer.parseInt(args[a + 1]);
+			else
+				System.exit(1);
+		if (a >= args.length)
 			System.exit(1);
 
+		MyLogger.setLevel(logLevel);
 		Logger logger = MyLogger.getInstance();
-		BufferedReader br = new BufferedReader(new FileReader(args[0]));
-		StringTokenizer st = new StringTokenizer(br.readLine());
+		InputReader in = new InputReader(args[a]);
 
-		int nLocations = Integer.parseInt(st.nextToken());
-		int nVehicles = Integer.parseInt(st.nextToken());
-		int vehicleCapacity = Integer.parseInt(st.nextToken());
-		int nRequests = Integer.parseInt(st.nextToken());
+		int nLocations = in.nextInt();
+		int nVehicles = in.nextInt();
+		int vehicleCapacity = in.nextInt();
+		int nRequests = in.nextInt();
+		int nEdges = in.atEndOfLine() ? -1 : in.nextInt();
 
-		// create city map
-		EdgeWeightedDigraph cityMap = new EdgeWeightedDigraph(nLocations + 1);
-		for (int v = 1; v <= nLocations; v++)
+		// create city map, unless it is in a snapshot of the text that follows
+		long mapStart = in.position();
+		boolean matrix = witnessLimit == 0 && nLandmarks == 0
+				&& cacheBytes == 0;
+		DistanceSnapshot saved = matrix && snapshot != null ? DistanceSnapshot
+				.open(snapshot, false) : null;
+		if (saved != null
+				&& (saved.V() != nLocations + 1 || !saved.isOf(args[a],
+						mapStart)))
+			saved = null;
+		EdgeWeightedDigraph cityMap = null; // Not built from a snapshot
+		CSRDigraph csr;
+		logger.info("City Map");
+		if (saved != null)
 		{
-			st = new StringTokenizer(br.readLine());
-			for (int w = 1; st.hasMoreElements(); w++)
+			in.skipBytes(saved.sourceLength());
+			csr = saved.graph();
+			logger.info(csr.toString());
+		}
+		else
+		{
+			cityMap = readCityMap(in, nLocations, nEdges);
+			csr = matrix ? new CSRDigraph(cityMap) : null;
+			logger.info(cityMap.toString());
+		}
+
+		// Shortest distances between all locations, shared by every stop
+		DistanceOracle distances;
+		if (witnessLimit > 0)
+			distances = new ContractionHierarchy(new CSRDigraph(cityMap),
+					witnessLimit);
+		else if (nLandmarks > 0)
+			distances = new BidirectionalALT(cityMap, nLandmarks);
+		else if (cacheBytes > 0)
+			distances = new SPTreeCache(cityMap, cacheBytes);
+		else if (saved != null)
+			distances = saved;
+		else
+		{
+			distances = new DistanceMatrix(csr, nThreads);
+			if (snapshot != null)
 			{
-				int distance = Integer.parseInt(st.nextToken());
-				if (distance != -1)
-					cityMap.addEdge(new DirectedEdge(v, w, distance));
+				logger.info("Saving shortest paths to " + snapshot);
+				DistanceSnapshot.write(snapshot, csr, distances, args[a],
+						mapStart, in.position() - mapStart);
 			}
 		}
-		logger.info("City Map");
-		logger.info(cityMap.toString());
+
+		try
+		{
+			SchedulerMetrics.register(distances);
+		}
+		catch (JMException e)
+		{
+			logger.warning("Metrics not exported over JMX : " + e);
+		}
 
 		// create taxis
 		logger.info("Taxi's");
-		st = new StringTokenizer(br.readLine());
 		ArrayList<Taxi> taxis = new ArrayList<Taxi>();
 		for (int i = 0; i < nVehicles; i++)
 		{
-			int location = Integer.parseInt(st.nextToken());
-			Taxi t = new Taxi(location, vehicleCapacity, cityMap);
+			int location = in.nextInt();
+			Taxi t = new Taxi(location, vehicleCapacity, distances);
 			taxis.add(t);
 			logger.info(t.toString());
 		}
 		logger.info("");
 
+		if (online != null)
+		{
+			serve(in, nRequests, taxis, distances, online);
+			return;
+		}
+
 		// Requests
 		logger.info("Requests list");
 		ArrayList<Request> requests = new ArrayList<>();
-		for (int i = 0; i < nRequests; i++)
+		for (int i = 0; nRequests < 0 ? in.hasNext() : i < nRequests; i++)
 		{
-			st = new StringTokenizer(br.readLine());
-			int srcLocation = Integer.parseInt(st.nextToken());
-			int destLocation = Integer.parseInt(st.nextToken());
-			int et = Integer.parseInt(st.nextToken());
-			int lt = Integer.parseInt(st.nextToken());
-
-			Stop src = new Stop(srcLocation, et, lt, i, StopType.PICKUP,
-					cityMap);
-			DijkstraSP sp = new DijkstraSP(cityMap, src.location);
-			/*
-			 * int destLt = Math
-			 * .min(et
-			 * + (int) (sp.distTo(destLocation) * deviationFactor * timePerKm),
-			 * dayEndTime);
-			 */
-			int destLt = et
-					+ (int) (sp.distTo(destLocation) * deviationFactor * timePerKm);
-			Stop dest = new Stop(destLocation, et
-					+ (int) (sp.distTo(destLocation) * timePerKm), destLt, i,
-					StopType.DROP, cityMap);
-			Request r = new Request(src, dest);
+			Request r = readRequest(in, i, distances);
 			requests.add(r);
 			logger.info(r.toString());
 		}
 		logger.info("");
+		in.close();
 
 		final long startTime = System.currentTimeMillis();
-		DialARide darp = new DialARide(requests, taxis, cityMap);
+		ZonePartition zones = nZones > 1 ? new ZonePartition(distances, nZones)
+				: null;
+		DialARide darp = new DialARide(requests, taxis, cityMap,
+				dispatchThreads, horizon, zones, regret);
+		if (improveMillis > 0)
+			darp.improve(improveMillis);
 		final long endTime = System.currentTimeMillis();
 		logger.info("Program run time = " + (endTime - startTime) / 1000.0
 				+ "secs\n");
 		darp.logReport();
+		if (distances instanceof SPTreeCache
+				|| distances instanceof BidirectionalALT
+				|| distances instanceof ContractionHierarchy)
+			logger.info(distances.toString());
+		logger.info(SchedulerMetrics.getInstance().toString());
 		System.out.println(darp);
-		br.close();
+	}
+
+	// Dispatch requests online, first those remaining in the input and then
+	// those from the standard input or connections to a local port
+	private static void serve(InputReader in, int nRequests,
+			ArrayList<Taxi> taxis, DistanceOracle distances, String source)
+			throws IOException
+	{
+		Logger logger = MyLogger.getInstance();
+		OnlineDispatcher dispatcher = new OnlineDispatcher(taxis);
+		for (int i = 0; nRequests < 0 ? in.hasNext() : i < nRequests; i++)
+			dispatcher.dispatch(readRequest(in, i, distances));
+		in.close();
+
+		if (source.equals("stdin"))
+		{
+			dispatcher.serve(new InputReader(Channels.newChannel(System.in)),
+					System.out, distances);
+			for (Taxi t : taxis)
+				t.check();
+			logger.info(dispatcher.toString());
+			System.err.println(dispatcher);
+			return;
+		}
+
+		try (ServerSocket server = new ServerSocket(Integer.parseInt(source),
+				50, InetAddress.getLoopbackAddress()))
+		{
+			while (true)
+				try (Socket client = server.accept())
+				{
+					dispatcher.serve(new InputReader(Channels
+							.newChannel(client.getInputStream())),
+							new PrintStream(client.getOutputStream()),
+							distances);
+					logger.info(dispatcher.toString());
+				}
+				catch (IOException e)
+				{
+					// Only this connection is dropped
+					logger.warning("Connection failed : " + e.getMessage());
+				}
+		}
+	}
+
+	/**
+	 * Read the city map, as an nLocations x nLocations matrix of distances if
+	 * nEdges is negative and as nEdges lines of 'from to distance' otherwise
+	 * 
+	 * @param in The input, positioned after the first line
+	 * @param nLocations Number of locations
+	 * @param nEdges Number of edges, negative for a matrix
+	 * @return The city map, on vertices 1 to nLocations
+	 * @throws IOException
+	 */
+	static EdgeWeightedDigraph readCityMap(InputReader in, int nLocations,
+			int nEdges) throws IOException
+	{
+		EdgeWeightedDigraph cityMap = new EdgeWeightedDigraph(nLocations + 1);
+		if (nEdges < 0)
+			for (int v = 1; v <= nLocations; v++)
+				for (int w = 1; w <= nLocations; w++)
+				{
+					int distance = in.nextInt();
+					if (distance != -1)
+						cityMap.addEdge(new DirectedEdge(v, w, distance));
+				}
+		else
+			for (int e = 0; e < nEdges; e++)
+			{
+				int v = in.nextInt();
+				int w = in.nextInt();
+				int distance = in.nextInt();
+				if (v < 1 || v > nLocations || w < 1 || w > nLocations)
+					throw new IOException("Line " + in.line()
+							+ " : Invalid edge : " + v + "-" + w);
+				cityMap.addEdge(new DirectedEdge(v, w, distance));
+			}
+		return cityMap;
+	}
+
+	/**
+	 * Read a request 'from to et lt'. The drop is due no later than the
+	 * shortest travel time after the pickup, and must happen within
+	 * deviationFactor times that
+	 * 
+	 * @param in The input
+	 * @param id Id of the request
+	 * @param distances Distances between locations
+	 * @return The request
+	 * @throws IOException
+	 */
+	static Request readRequest(InputReader in, int id,
+			DistanceOracle distances) throws IOException
+	{
+		int srcLocation = in.nextInt();
+		int destLocation = in.nextInt();
+		int et = in.nextInt();
+		int lt = in.nextInt();
+		return newRequest(srcLocation, destLocation, et, lt, id, distances);
+	}
+
+	/**
+	 * {@link #readRequest(InputReader, int, DistanceOracle)}
+	 */
+	static Request newRequest(int srcLocation, int destLocation, int et,
+			int lt, int id, DistanceOracle distances)
+	{
+		Stop src = new Stop(srcLocation, et, lt, id, StopType.PICKUP,
+				distances);
+		int spDist = distances.distance(srcLocation, destLocation);
+		/*
+		 * int destLt = Math
+		 * .min(et
+		 * + (int) (spDist * deviationFactor * timePerKm),
+		 * dayEndTime);
+		 */
+		int destLt = et + (int) (spDist * deviationFactor * timePerKm);
+		Stop dest = new Stop(destLocation, et + spDist * timePerKm, destLt,
+				id, StopType.DROP, distances);
+		return new Request(src, dest);
 	}
 }
 
 /**
- * How far is 'taxi' from 'src' at 'time'
+ * Schedules the requests of a zone on the taxis of the zone, each request
+ * going to the first taxi that can service it
  * 
  * @author kempa
  * 
  */
-class NearestTaxi implements Comparable<NearestTaxi>
+@SuppressWarnings("serial")
+class ZoneScheduler extends RecursiveTask<ArrayList<Request>>
 {
-	Taxi taxi;
-	int dist;
+	private final ArrayList<Taxi> taxis;
+	private final ArrayList<Request> requests;
+	final ArrayList<Request> serviced; // Once joined
+	final ArrayList<Taxi> servicedBy; // Taxi of each serviced request
 
-	public NearestTaxi(int time, Stop src, Taxi taxi)
+	ZoneScheduler(ArrayList<Taxi> taxis, ArrayList<Request> requests)
 	{
-		this.taxi = taxi;
-		dist = taxi.dist(time, src);
+		this.taxis = taxis;
+		this.requests = requests;
+		serviced = new ArrayList<>();
+		servicedBy = new ArrayList<>();
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	/**
+	 * @return The requests none of the taxis could service
 	 */
 	@Override
-	public int compareTo(NearestTaxi o)
+	protected ArrayList<Request> compute()
+	{
+		SchedulerMetrics metrics = SchedulerMetrics.getInstance();
+		ArrayList<Request> unserviced = new ArrayList<>();
+		for (Request request : requests)
+		{
+			long start = System.nanoTime();
+			Taxi serviced = null;
+			for (Taxi taxi : taxis)
+				if (taxi.schedule(request))
+				{
+					serviced = taxi;
+					break;
+				}
+			if (serviced != null)
+			{
+				this.serviced.add(request);
+				servicedBy.add(serviced);
+			}
+			else
+				unserviced.add(request);
+			metrics.dispatched(System.nanoTime() - start);
+		}
+		return unserviced;
+	}
+}
+
+/**
+ * The cheapest insertion of a request into taxis lo..hi - 1. The taxis are
+ * only read, so that subranges can be evaluated in parallel
+ * 
+ * @author kempa
+ * 
+ */
+@SuppressWarnings("serial")
+class CheapestInsertion extends RecursiveTask<Insertion>
+{
+	private static final int THRESHOLD = 8; // Taxis evaluated per task
+
+	private final ArrayList<Taxi> taxis;
+	private final Request request;
+	private final int lo, hi;
+
+	CheapestInsertion(ArrayList<Taxi> taxis, Request request, int lo, int hi)
+	{
+		this.taxis = taxis;
+		this.request = request;
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	@Override
+	protected Insertion compute()
+	{
+		if (hi - lo > THRESHOLD)
+		{
+			int mid = (lo + hi) >>> 1;
+			CheapestInsertion left = new CheapestInsertion(taxis, request, lo,
+					mid);
+			left.fork();
+			Insertion right = new CheapestInsertion(taxis, request, mid, hi)
+					.compute();
+			return cheaper(left.join(), right);
+		}
+
+		Insertion best = null;
+		for (int i = lo; i < hi; i++)
+			best = cheaper(best, taxis.get(i).evaluate(request));
+		return best;
+	}
+
+	// The cheaper of two insertions, the first one on a tie. a is into a
+	// taxi listed before that of b
+	private static Insertion cheaper(Insertion a, Insertion b)
 	{
-		return dist - o.dist;
+		if (a == null)
+			return b;
+		if (b == null || a.cost <= b.cost)
+			return a;
+		return b;
 	}
-}
\ No newline at end of file
+}
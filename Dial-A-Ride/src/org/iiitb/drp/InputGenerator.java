@@ -0,0 +1,421 @@
+package org.iiitb.drp;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.iiitb.graphs.DirectedEdge;
+import org.iiitb.graphs.EdgeWeightedDigraph;
+
+/**
+ * Generates input for {@link DialARide} : a city map, a fleet and a day of
+ * requests. The map is written as an edge list, so that maps of 10^5
+ * locations stay small, and the requests are written as they are drawn, never
+ * all held in memory. The same seed always gives the same input.
+ *
+ * @author kempa
+ *
+ */
+public class InputGenerator
+{
+	private final Random random;
+	private final PrintWriter out;
+
+	/**
+	 * @param seed Seed of every random choice
+	 * @param out Where to write the input
+	 */
+	public InputGenerator(long seed, OutputStream out)
+	{
+		random = new Random(seed);
+		this.out = new PrintWriter(new BufferedOutputStream(out, 1 << 16));
+	}
+
+	/**
+	 * Write a whole input
+	 *
+	 * @param map The city map
+	 * @param nTaxis Number of taxis, starting at random locations
+	 * @param capacity Passengers a taxi can carry
+	 * @param nRequests Number of requests
+	 * @param rushShare Share of the requests made during the morning and
+	 *            evening rush hours. The others are spread over the day
+	 */
+	public void generate(RoadNetwork map, int nTaxis, int capacity,
+			int nRequests, double rushShare)
+	{
+		int V = map.V();
+		out.println(V + " " + nTaxis + " " + capacity + " " + nRequests + " "
+				+ map.E());
+		map.write(out, random);
+		for (int i = 0; i < nTaxis; i++)
+			out.println(1 + random.nextInt(V));
+		for (int i = 0; i < nRequests; i++)
+		{
+			int from = 1 + random.nextInt(V);
+			int to = 1 + random.nextInt(V - 1);
+			if (to >= from)
+				to++;
+			int et = pickUpTime(rushShare);
+			int lt = Math.min(et + 10 + random.nextInt(21),
+					DialARide.dayEndTime);
+			out.println(from + " " + to + " " + et + " " + lt);
+		}
+		out.flush();
+	}
+
+	// Peaks around 8:30 and 18:00, the rest uniformly from 6:00 to 23:00
+	private int pickUpTime(double rushShare)
+	{
+		double u = random.nextDouble();
+		double t;
+		if (u < rushShare / 2)
+			t = 8.5 * 60 + random.nextGaussian() * 45;
+		else if (u < rushShare)
+			t = 18 * 60 + random.nextGaussian() * 60;
+		else
+			t = 6 * 60 + random.nextDouble() * 17 * 60;
+		return Math.max(DialARide.dayStartTime,
+				Math.min((int) t, DialARide.dayEndTime - 1));
+	}
+
+	/**
+	 * A strongly connected road network on locations 1 to V(), with roads both
+	 * ways and lengths in whole kilometres
+	 */
+	public static abstract class RoadNetwork
+	{
+		public abstract int V();
+
+		/**
+		 * @return Number of roads, counting each direction
+		 */
+		public abstract int E();
+
+		/**
+		 * Write every road as a line 'from to length'
+		 */
+		abstract void write(PrintWriter out, Random random);
+
+		/**
+		 * @param random Source of the road lengths, as for write()
+		 * @return The roads as they are written, on locations 1 to V().
+		 *         Location 0 has no roads
+		 */
+		public EdgeWeightedDigraph graph(Random random)
+		{
+			StringWriter text = new StringWriter();
+			PrintWriter out = new PrintWriter(text);
+			write(out, random);
+			out.flush();
+
+			EdgeWeightedDigraph G = new EdgeWeightedDigraph(V() + 1);
+			try (Scanner in = new Scanner(text.toString()))
+			{
+				for (int e = 0; e < E(); e++)
+					G.addEdge(new DirectedEdge(in.nextInt(), in.nextInt(), in
+							.nextInt()));
+			}
+			return G;
+		}
+
+		static void writeRoad(PrintWriter out, int v, int w, int length)
+		{
+			out.println(v + " " + w + " " + length);
+			out.println(w + " " + v + " " + length);
+		}
+
+		/**
+		 * @param shape grid, ring or geometric
+		 * @param V Number of locations wanted. The network may have a few more
+		 *            to complete its shape
+		 * @param seed Seed of the locations of a geometric network
+		 */
+		public static RoadNetwork of(String shape, int V, long seed)
+		{
+			if (V < 2)
+				throw new IllegalArgumentException("Too few locations : " + V);
+			if (shape.equals("grid"))
+				return new Grid(V);
+			if (shape.equals("ring"))
+				return new RingRadial(V);
+			if (shape.equals("geometric"))
+				return new Geometric(V, seed);
+			throw new IllegalArgumentException("Unknown shape : " + shape);
+		}
+	}
+
+	/**
+	 * Square grid of blocks 1 or 2 km long
+	 */
+	static class Grid extends RoadNetwork
+	{
+		private final int side;
+
+		Grid(int V)
+		{
+			side = (int) Math.ceil(Math.sqrt(V));
+		}
+
+		public int V()
+		{
+			return side * side;
+		}
+
+		public int E()
+		{
+			return 4 * side * (side - 1);
+		}
+
+		void write(PrintWriter out, Random random)
+		{
+			for (int r = 0; r < side; r++)
+				for (int c = 0; c < side; c++)
+				{
+					int v = 1 + r * side + c;
+					if (c + 1 < side)
+						writeRoad(out, v, v + 1, 1 + random.nextInt(2));
+					if (r + 1 < side)
+						writeRoad(out, v, v + side, 1 + random.nextInt(2));
+				}
+		}
+	}
+
+	/**
+	 * Concentric ring roads 1 km apart, crossed by radial roads meeting at the
+	 * centre, location 1
+	 */
+	static class RingRadial extends RoadNetwork
+	{
+		private final int spokes;
+		private final int rings;
+
+		RingRadial(int V)
+		{
+			// About as far apart along the outer ring as between rings
+			spokes = Math.max(4, (int) Math.sqrt(2 * Math.PI * V));
+			rings = (V - 1 + spokes - 1) / spokes;
+		}
+
+		public int V()
+		{
+			return 1 + rings * spokes;
+		}
+
+		public int E()
+		{
+			return 4 * rings * spokes;
+		}
+
+		// Location on ring k, from 1, and spoke s
+		private int location(int k, int s)
+		{
+			return 2 + (k - 1) * spokes + s;
+		}
+
+		void write(PrintWriter out, Random random)
+		{
+			for (int k = 1; k <= rings; k++)
+			{
+				int arc = (int) Math.ceil(2 * Math.PI * k / spokes);
+				for (int s = 0; s < spokes; s++)
+				{
+					writeRoad(out, k == 1 ? 1 : location(k - 1, s),
+							location(k, s), 1);
+					writeRoad(out, location(k, s),
+							location(k, (s + 1) % spokes), arc);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Locations scattered uniformly, one per square km, with roads between
+	 * those close enough to have about 6 neighbours. Roads joining
+	 * neighbouring cells of the scatter are added to connect what is left
+	 * disconnected
+	 */
+	static class Geometric extends RoadNetwork
+	{
+		private static final double radius = Math.sqrt(6 / Math.PI); // km
+
+		private final int V;
+		private final double[] x, y;
+		private final int nCells; // Cells along a side
+		private final int[] first; // First location of each cell
+		private final int[] next; // Next location in the same cell
+		private final int[] links; // Pairs of locations connecting the rest
+		private final int E;
+
+		Geometric(int V, long seed)
+		{
+			this.V = V;
+			Random random = new Random(seed);
+			double side = Math.sqrt(V);
+			nCells = Math.max(1, (int) (side / radius));
+			x = new double[V];
+			y = new double[V];
+			first = new int[nCells * nCells];
+			next = new int[V];
+			Arrays.fill(first, -1);
+			for (int v = 0; v < V; v++)
+			{
+				x[v] = random.nextDouble() * side;
+				y[v] = random.nextDouble() * side;
+				int c = cell(x[v], side) * nCells + cell(y[v], side);
+				next[v] = first[c];
+				first[c] = v;
+			}
+
+			// Count the roads, merging the components they join
+			int[] component = new int[V];
+			for (int v = 0; v < V; v++)
+				component[v] = v;
+			int nRoads = 0;
+			for (int v = 0; v < V; v++)
+				for (int w : neighbours(v))
+				{
+					nRoads++;
+					union(component, v, w);
+				}
+
+			// Link consecutive locations, in cell order, of distinct components
+			int[] l = new int[2 * V];
+			int nLinks = 0;
+			int prev = -1;
+			for (int c = 0; c < first.length; c++)
+				for (int v = first[c]; v >= 0; v = next[v])
+				{
+					if (prev >= 0 && union(component, prev, v))
+					{
+						l[nLinks++] = prev;
+						l[nLinks++] = v;
+					}
+					prev = v;
+				}
+			links = Arrays.copyOf(l, nLinks);
+			E = 2 * nRoads + links.length;
+		}
+
+		private int cell(double coordinate, double side)
+		{
+			return Math.min(nCells - 1, (int) (coordinate / side * nCells));
+		}
+
+		// Locations within radius of v and after it, so each road is found
+		// once
+		private int[] neighbours(int v)
+		{
+			double side = Math.sqrt(V);
+			int cx = cell(x[v], side), cy = cell(y[v], side);
+			int[] n = new int[16];
+			int size = 0;
+			int last = nCells - 1;
+			for (int i = Math.max(0, cx - 1); i <= Math.min(last, cx + 1); i++)
+				for (int j = Math.max(0, cy - 1); j <= Math.min(last, cy + 1); j++)
+					for (int w = first[i * nCells + j]; w >= 0; w = next[w])
+						if (w > v && length(v, w) <= radius)
+						{
+							if (size == n.length)
+								n = Arrays.copyOf(n, 2 * size);
+							n[size++] = w;
+						}
+			return Arrays.copyOf(n, size);
+		}
+
+		private double length(int v, int w)
+		{
+			return Math.hypot(x[v] - x[w], y[v] - y[w]);
+		}
+
+		// Merge the components of v and w. Were they distinct?
+		private static boolean union(int[] component, int v, int w)
+		{
+			int a = find(component, v), b = find(component, w);
+			if (a == b)
+				return false;
+			component[a] = b;
+			return true;
+		}
+
+		private static int find(int[] component, int v)
+		{
+			while (component[v] != v)
+				v = component[v] = component[component[v]];
+			return v;
+		}
+
+		public int V()
+		{
+			return V;
+		}
+
+		public int E()
+		{
+			return E;
+		}
+
+		void write(PrintWriter out, Random random)
+		{
+			for (int v = 0; v < V; v++)
+				for (int w : neighbours(v))
+					writeRoad(out, v + 1, w + 1, km(v, w));
+			for (int i = 0; i < links.length; i += 2)
+				writeRoad(out, links[i] + 1, links[i + 1] + 1,
+						km(links[i], links[i + 1]));
+		}
+
+		private int km(int v, int w)
+		{
+			return Math.max(1, (int) Math.ceil(length(v, w)));
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		// Usage : InputGenerator [-shape grid|ring|geometric] [-seed n]
+		// [-capacity c] [-rush share] [-out file] nLocations nTaxis nRequests
+		// -shape : Shape of the road network, grid by default
+		// -seed : Seed of the random choices, 1 by default
+		// -capacity : Passengers a taxi can carry, 4 by default
+		// -rush : Share of the requests made in the rush hours, 0.6 by default
+		// -out : File to write, the standard output by default
+		String shape = "grid";
+		long seed = 1;
+		int capacity = 4;
+		double rushShare = 0.6;
+		String file = null;
+		int a = 0;
+		for (; a < args.length - 1 && args[a].startsWith("-"); a += 2)
+			if (args[a].equals("-shape"))
+				shape = args[a + 1];
+			else if (args[a].equals("-seed"))
+				seed = Long.parseLong(args[a + 1]);
+			else if (args[a].equals("-capacity"))
+				capacity = Integer.parseInt(args[a + 1]);
+			else if (args[a].equals("-rush"))
+				rushShare = Double.parseDouble(args[a + 1]);
+			else if (args[a].equals("-out"))
+				file = args[a + 1];
+			else
+				System.exit(1);
+		if (a + 3 > args.length)
+			System.exit(1);
+
+		RoadNetwork map = RoadNetwork.of(shape, Integer.parseInt(args[a]),
+				seed);
+		try (OutputStream out = file == null ? System.out
+				: new FileOutputStream(file))
+		{
+			new InputGenerator(seed, out).generate(map,
+					Integer.parseInt(args[a + 1]), capacity,
+					Integer.parseInt(args[a + 2]), rushShare);
+		}
+	}
+}
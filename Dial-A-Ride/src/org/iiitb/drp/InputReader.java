@@ -0,0 +1,179 @@
+package org.iiitb.drp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads whitespace separated integers straight out of the bytes of a
+ * channel. Numbers are accumulated digit by digit from a reused buffer, so
+ * no line, token or string is created for them.
+ * 
+ * @author kempa
+ * 
+ */
+public class InputReader implements Closeable
+{
+	private final ReadableByteChannel in;
+	private final ByteBuffer buffer;
+	private final byte[] b; // Backing array of buffer
+	private int pos; // Next unread byte of b
+	private int limit; // End of the bytes read into b
+	private int line; // Line of the next unread byte, from 1
+	private long consumed; // Bytes read before those in b
+
+	/**
+	 * @param fileName The file to read
+	 * @throws IOException
+	 */
+	public InputReader(String fileName) throws IOException
+	{
+		this(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ));
+	}
+
+	/**
+	 * @param in The channel to read. Closed along with this reader
+	 */
+	public InputReader(ReadableByteChannel in)
+	{
+		this.in = in;
+		buffer = ByteBuffer.allocate(1 << 16);
+		b = buffer.array();
+		pos = limit = 0;
+		line = 1;
+	}
+
+	// The next unread byte, without consuming it. -1 at the end of input
+	private int peek() throws IOException
+	{
+		if (pos == limit)
+		{
+			consumed += limit;
+			pos = limit = 0;
+			buffer.clear();
+			int n;
+			do
+				n = in.read(buffer);
+			while (n == 0);
+			if (n < 0)
+				return -1;
+			limit = n;
+		}
+		return b[pos];
+	}
+
+	// Skip blanks, and line breaks too if lines is true
+	private void skip(boolean lines) throws IOException
+	{
+		for (int c = peek(); c == ' ' || c == '\t' || c == '\r' || lines
+				&& c == '\n'; c = peek())
+		{
+			if (c == '\n')
+				line++;
+			pos++;
+		}
+	}
+
+	/**
+	 * @return Is there an integer left to read?
+	 * @throws IOException
+	 */
+	public boolean hasNext() throws IOException
+	{
+		skip(true);
+		return peek() != -1;
+	}
+
+	/**
+	 * @return Is the rest of the current line blank?
+	 * @throws IOException
+	 */
+	public boolean atEndOfLine() throws IOException
+	{
+		skip(false);
+		int c = peek();
+		return c == '\n' || c == -1;
+	}
+
+	/**
+	 * Read the next integer, wherever on the current or following lines it
+	 * is
+	 * 
+	 * @return The integer
+	 * @throws IOException If the next token is not an integer or the input
+	 *             has ended
+	 */
+	public int nextInt() throws IOException
+	{
+		skip(true);
+		boolean negative = peek() == '-';
+		if (negative)
+			pos++;
+
+		int c = peek();
+		if (c < '0' || c > '9')
+			throw new IOException("Line " + line + " : Expected an integer"
+					+ (c == -1 ? " before the end of input" : ""));
+		int n = 0;
+		for (; c >= '0' && c <= '9'; c = peek())
+		{
+			n = 10 * n + (c - '0');
+			pos++;
+		}
+		if (c != -1 && c != ' ' && c != '\t' && c != '\r' && c != '\n')
+			throw new IOException("Line " + line + " : Expected an integer");
+		return negative ? -n : n;
+	}
+
+	/**
+	 * Skip a number of bytes without reading integers out of them
+	 * 
+	 * @param n Number of bytes
+	 * @throws IOException If the input ends first
+	 */
+	public void skipBytes(long n) throws IOException
+	{
+		while (n > 0)
+		{
+			if (peek() == -1)
+				throw new IOException("Line " + line
+						+ " : Unexpected end of input");
+			int end = (int) Math.min(limit, pos + n);
+			n -= end - pos;
+			for (; pos < end; pos++)
+				if (b[pos] == '\n')
+					line++;
+		}
+	}
+
+	/**
+	 * @return Offset of the next unread byte from the start of the input
+	 */
+	public long position()
+	{
+		return consumed + pos;
+	}
+
+	/**
+	 * @return Line of the next unread byte, from 1
+	 */
+	public int line()
+	{
+		return line;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+}
@@ -0,0 +1,39 @@
+package org.iiitb.drp;
+
+/**
+ * A feasible way of fitting a request into the route of a taxi, found without
+ * modifying the route. Valid only as long as the route is left unchanged.
+ * 
+ * @author kempa
+ * 
+ */
+class Insertion
+{
+	final Taxi taxi;
+	final Request request;
+	final int pickUpPosition; // Position of the pickup in the new route
+	final int dropPosition; // Position of the drop in the new route
+	final int pickUpAt; // Actual pickup time
+	final int dropAt; // Actual drop time
+	final int cost; // Additional distance the taxi has to travel
+
+	Insertion(Taxi taxi, Request request, int pickUpPosition,
+			int dropPosition, int pickUpAt, int dropAt, int cost)
+	{
+		this.taxi = taxi;
+		this.request = request;
+		this.pickUpPosition = pickUpPosition;
+		this.dropPosition = dropPosition;
+		this.pickUpAt = pickUpAt;
+		this.dropAt = dropAt;
+		this.cost = cost;
+	}
+
+	public String toString()
+	{
+		return "Insertion of request " + request.pickUp.requestId
+				+ " into taxi " + taxi.getId() + " at positions "
+				+ pickUpPosition + " and " + dropPosition + " costing "
+				+ cost + " kms";
+	}
+}
@@ -0,0 +1,90 @@
+package org.iiitb.drp;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of durations in buckets growing geometrically, 8 to every power of
+ * two, so that percentiles are known to within 12.5%. Buckets are striped
+ * counters, so threads recording at once do not contend.
+ *
+ * @author kempa
+ *
+ */
+public class LatencyHistogram
+{
+	private static final int subBuckets = 8; // Per power of two
+	private static final int subBits = 3; // log2(subBuckets)
+
+	private final LongAdder[] counts;
+
+	public LatencyHistogram()
+	{
+		counts = new LongAdder[subBuckets * (64 - subBits + 1)];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = new LongAdder();
+	}
+
+	// Durations below subBuckets have a bucket each. Above, the bucket is
+	// given by the highest set bit and the subBits bits following it
+	private static int bucket(long nanos)
+	{
+		if (nanos < subBuckets)
+			return (int) Math.max(0, nanos);
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - subBits)) & (subBuckets - 1);
+		return (exponent - subBits + 1) * subBuckets + sub;
+	}
+
+	// Smallest duration falling in bucket i
+	private static long lowest(int i)
+	{
+		if (i < subBuckets)
+			return i;
+		int exponent = i / subBuckets + subBits - 1;
+		return (long) (subBuckets + i % subBuckets) << (exponent - subBits);
+	}
+
+	/**
+	 * @param nanos A duration, in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		counts[bucket(nanos)].increment();
+	}
+
+	/**
+	 * @return Number of durations recorded
+	 */
+	public long count()
+	{
+		long n = 0;
+		for (LongAdder c : counts)
+			n += c.sum();
+		return n;
+	}
+
+	/**
+	 * @param percentile From 0 to 100
+	 * @return Upper bound of the durations, in nanoseconds, of the given
+	 *         percentage of those recorded. 0 if none was
+	 */
+	public long percentile(double percentile)
+	{
+		long[] snapshot = new long[counts.length];
+		long n = 0;
+		for (int i = 0; i < counts.length; i++)
+			n += snapshot[i] = counts[i].sum();
+		if (n == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100 * n);
+		long seen = 0;
+		int i = 0;
+		for (; i < snapshot.length - 1; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank && seen > 0)
+				break;
+		}
+		return i + 1 < snapshot.length ? lowest(i + 1) - 1 : Long.MAX_VALUE;
+	}
+}
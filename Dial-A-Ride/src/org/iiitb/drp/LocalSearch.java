@@ -0,0 +1,259 @@
+package org.iiitb.drp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.iiitb.drp.RequestRegistry.State;
+
+/**
+ * Improves a schedule by moving requests between taxis, for as long as moves
+ * keep improving it or until a deadline. Unserviced requests are retried
+ * after every round of moves, as the moves free up time in the routes.
+ *
+ * Moves are scored by the distance they add or save, worked out from the
+ * stops around them, and made only if they shorten the routes. The schedule
+ * is thus valid and the best found whenever the search stops.
+ *
+ * @author kempa
+ *
+ */
+class LocalSearch
+{
+	private final DialARide darp;
+	private final RequestRegistry registry; // Of darp
+	private final HashMap<Integer, Taxi> byId;
+	private long deadline; // System.nanoTime() at which to stop
+	private int nMoves;
+	private int nInserted; // Unserviced requests inserted
+	private int distanceSaved;
+	private int rounds;
+
+	LocalSearch(DialARide darp)
+	{
+		this.darp = darp;
+		registry = darp.registry;
+		byId = new HashMap<>();
+		for (Taxi t : darp.taxis)
+			byId.put(t.getId(), t);
+	}
+
+	/**
+	 * Search until no move improves the schedule or the budget is spent
+	 *
+	 * @param budgetMillis Wall-clock time allowed, in milliseconds
+	 */
+	void run(long budgetMillis)
+	{
+		deadline = System.nanoTime() + budgetMillis * 1000000;
+		boolean improved = true;
+		while (improved && !expired())
+		{
+			rounds++;
+			// Not short-circuited: every kind of move is tried each round
+			improved = insertUnserviced() | relocate() | exchange()
+					| swapTails();
+		}
+		insertUnserviced();
+	}
+
+	private boolean expired()
+	{
+		return System.nanoTime() - deadline >= 0;
+	}
+
+	// Insert every unserviced request that fits into some taxi into the one
+	// where it adds the least distance
+	private boolean insertUnserviced()
+	{
+		boolean improved = false;
+		for (Request r : registry.in(State.REJECTED))
+		{
+			if (expired())
+				break;
+			Insertion best = null;
+			for (Taxi t : darp.taxis)
+			{
+				Insertion insertion = t.evaluate(r);
+				if (insertion != null
+						&& (best == null || insertion.cost < best.cost))
+					best = insertion;
+			}
+			if (best == null)
+				continue;
+			best.taxi.commit(best);
+			darp.serviced(r, best.taxi);
+			distanceSaved -= best.cost;
+			nInserted++;
+			improved = true;
+		}
+		return improved;
+	}
+
+	// Move requests to the taxi where they add less distance than their
+	// removal saves
+	private boolean relocate()
+	{
+		boolean improved = false;
+		for (Request r : darp.requests)
+		{
+			if (expired())
+				break;
+			if (registry.state(r) != State.ASSIGNED)
+				continue; // Unserviced, or picked up and so fixed
+			Taxi from = taxiOf(r);
+			int saving = from.withdrawalSaving(r);
+			Insertion best = null;
+			for (Taxi t : darp.taxis)
+				if (t != from)
+				{
+					Insertion insertion = t.evaluate(r);
+					if (insertion != null && insertion.cost < saving
+							&& (best == null || insertion.cost < best.cost))
+						best = insertion;
+				}
+			if (best == null)
+				continue;
+			from.withdraw(r);
+			best.taxi.commit(best);
+			registry.assign(r, best.taxi);
+			distanceSaved += saving - best.cost;
+			nMoves++;
+			improved = true;
+		}
+		return improved;
+	}
+
+	// Swap requests of different taxis wanting to be picked up at the same
+	// time, if that shortens the two routes. Each request is scored against
+	// the route of the other taxi as if the other request were withdrawn from
+	// it, without changing either route, which is done only for a swap made
+	private boolean exchange()
+	{
+		boolean improved = false;
+		ArrayList<Request> serviced = new ArrayList<>();
+		for (Request r : registry.in(State.ASSIGNED))
+			serviced.add(r);
+		for (int i = 0; i < serviced.size(); i++)
+			for (int j = i + 1; j < serviced.size(); j++)
+			{
+				if (expired())
+					return improved;
+				Request r1 = serviced.get(i), r2 = serviced.get(j);
+				Taxi a = taxiOf(r1), b = taxiOf(r2);
+				if (a == b || r1.pickUp.et > r2.pickUp.lt
+						|| r2.pickUp.et > r1.pickUp.lt)
+					continue;
+
+				int cost1 = b.costWithout(r1, r2);
+				if (cost1 < 0)
+					continue;
+				int cost2 = a.costWithout(r2, r1);
+				if (cost2 < 0 || cost1 + cost2 >= a.withdrawalSaving(r1)
+						+ b.withdrawalSaving(r2))
+					continue;
+
+				// The stops left keep their times or are brought forward by the
+				// withdrawals, so the insertions scored remain feasible
+				Insertion undo1 = a.withdraw(r1);
+				Insertion undo2 = b.withdraw(r2);
+				Insertion to1 = b.evaluate(r1);
+				Insertion to2 = a.evaluate(r2);
+				int delta = to1 == null || to2 == null ? 0 : to1.cost
+						+ to2.cost - undo1.cost - undo2.cost;
+				if (delta < 0)
+				{
+					b.commit(to1);
+					a.commit(to2);
+					registry.assign(r1, b);
+					registry.assign(r2, a);
+					distanceSaved -= delta;
+					nMoves++;
+					improved = true;
+				}
+				else
+				{
+					b.commit(undo2);
+					a.commit(undo1);
+				}
+			}
+		return improved;
+	}
+
+	// Exchange the ends of the routes of two taxis, cut where both are empty,
+	// if that shortens them and the stops moved can still be made in time
+	private boolean swapTails()
+	{
+		boolean improved = false;
+		for (Taxi a : darp.taxis)
+			for (Taxi b : darp.taxis)
+			{
+				if (a == b || a.capacity() != b.capacity())
+					continue;
+				for (int i = 0; i <= a.route.size(); i++)
+					for (int j = 0; j <= b.route.size(); j++)
+					{
+						if (expired())
+							return improved;
+						if (i == a.route.size() && j == b.route.size()
+								|| a.loadBefore(i) != 0
+								|| b.loadBefore(j) != 0)
+							continue;
+						int delta = link(a.stopBefore(i), b, j)
+								+ link(b.stopBefore(j), a, i)
+								- link(a.stopBefore(i), a, i)
+								- link(b.stopBefore(j), b, j);
+						if (delta >= 0 || !canFollow(a, i, b, j)
+								|| !canFollow(b, j, a, i))
+							continue;
+						for (int k = i; k < a.route.size(); k++)
+							if (a.route.get(k).stopType == StopType.PICKUP)
+								registry.assign(requestOf(a.route.get(k)), b);
+						for (int k = j; k < b.route.size(); k++)
+							if (b.route.get(k).stopType == StopType.PICKUP)
+								registry.assign(requestOf(b.route.get(k)), a);
+						a.swapTails(i, b, j);
+						distanceSaved -= delta;
+						nMoves++;
+						improved = true;
+					}
+			}
+		return improved;
+	}
+
+	// Distance from prev to the stop of t at position. 0 past the last stop
+	private static int link(Stop prev, Taxi t, int position)
+	{
+		return position < t.route.size() ? prev.distTo(t.route.get(position))
+				: 0;
+	}
+
+	// Can the stops of b from position j on follow the stop of a before
+	// position i?
+	private static boolean canFollow(Taxi a, int i, Taxi b, int j)
+	{
+		if (j == b.route.size())
+			return true;
+		Stop prev = a.stopBefore(i), s = b.route.get(j);
+		int at = Math.max(prev.at + Taxi.shortestTime(prev, s), s.et);
+		return at - s.at <= b.route.slack(j);
+	}
+
+	private Request requestOf(Stop s)
+	{
+		return registry.request(s.requestId);
+	}
+
+	// The taxi servicing a request. null if none
+	private Taxi taxiOf(Request r)
+	{
+		return byId.get(registry.taxi(r));
+	}
+
+	public String toString()
+	{
+		return "Local search : " + rounds + " rounds, " + nMoves + " moves, "
+				+ nInserted + " unserviced requests inserted, distance "
+				+ (distanceSaved >= 0 ? "saved " : "added ")
+				+ Math.abs(distanceSaved) + " kms";
+	}
+}
@@ -4,7 +4,6 @@
 package org.iiitb.drp;
 
 import java.io.IOException;
-import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -12,11 +11,27 @@ import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 /**
+ * The log of a run, written to log.txt by a background thread. Messages are
+ * only built if their level is enabled, e.g.
+ * 
+ * <pre>
+ * if (logger.isLoggable(MyLogger.TRACE))
+ * 	logger.log(MyLogger.TRACE, &quot;Added &quot; + stop);
+ * </pre>
+ * 
  * @author kempa
  * 
  */
 public final class MyLogger
 {
+	/**
+	 * Level of the per-insertion diagnostics of the scheduler. Disabled by
+	 * default
+	 */
+	public static final Level TRACE = Level.FINEST;
+
+	private static final int bufferSize = 8192; // Records awaiting the writer
+
 	private static Logger loggerInstance = null;
 
 	private MyLogger() {}
@@ -26,7 +41,7 @@ public final class MyLogger
 		if (loggerInstance == null)
 		{
 			loggerInstance = Logger.getLogger(DialARide.class.getName());
-			Handler fileHandler = new FileHandler("log.txt");
+			Handler fileHandler = new AsyncFileHandler("log.txt", bufferSize);
 			loggerInstance.setUseParentHandlers(false);
 			fileHandler.setFormatter(new LogFileFormatter());
 			loggerInstance.addHandler(fileHandler);
@@ -35,6 +50,18 @@ public final class MyLogger
 		return loggerInstance;
 	}
 
+	/**
+	 * Set the level of the log
+	 * 
+	 * @param level A {@link Level} name or TRACE
+	 */
+	public static void setLevel(String level) throws SecurityException,
+			IOException
+	{
+		getInstance().setLevel(
+				level.equals("TRACE") ? TRACE : Level.parse(level));
+	}
+
 }
 
 class LogFileFormatter extends Formatter
@@ -0,0 +1,170 @@
+package org.iiitb.drp;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import org.iiitb.graphs.DistanceOracle;
+
+/**
+ * Assigns requests to taxis one at a time, as they arrive, instead of
+ * planning a whole day at once. Each request goes to the first taxi that can
+ * accommodate it, as in {@link DialARide#schedule1()}. Time is advanced
+ * explicitly, dropping the stops the taxis have been through, and a request
+ * must arrive before its earliest pickup time.
+ * 
+ * @author kempa
+ * 
+ */
+public class OnlineDispatcher
+{
+	private final ArrayList<Taxi> taxis;
+	private int now; // Simulated time
+	private int nAssigned;
+	private int nRejected;
+	private int revenue;
+	private final LatencyHistogram latencies; // Of dispatch()
+
+	/**
+	 * Outcome of the dispatch of a request
+	 */
+	public static class Decision
+	{
+		public final Request request;
+		public final Taxi taxi; // null if the request was rejected
+		public final long latency; // Nanoseconds taken to decide
+
+		Decision(Request request, Taxi taxi, long latency)
+		{
+			this.request = request;
+			this.taxi = taxi;
+			this.latency = latency;
+		}
+
+		public String toString()
+		{
+			return request.getId() + " " + (taxi == null ? -1 : taxi.getId())
+					+ " " + latency / 1000 + "us";
+		}
+	}
+
+	public OnlineDispatcher(ArrayList<Taxi> taxis)
+	{
+		this.taxis = taxis;
+		now = DialARide.dayStartTime;
+		latencies = new LatencyHistogram();
+	}
+
+	/**
+	 * @return The simulated time
+	 */
+	public int now()
+	{
+		return now;
+	}
+
+	/**
+	 * Advance the simulated time, dropping every stop the taxis are through
+	 * with by then
+	 * 
+	 * @param time The new time. Ignored if earlier than the current one
+	 */
+	public void advanceTo(int time)
+	{
+		if (time <= now)
+			return;
+		now = time;
+		for (Taxi t : taxis)
+			t.complete(time);
+	}
+
+	/**
+	 * Assign a request to a taxi right away
+	 * 
+	 * @param r The request
+	 * @return The decision
+	 */
+	public Decision dispatch(Request r)
+	{
+		long start = System.nanoTime();
+		Taxi assigned = null;
+		if (r.pickUp.et >= now) // Else it arrived too late to be serviced
+			for (Taxi taxi : taxis)
+				if (taxi.schedule(r))
+				{
+					assigned = taxi;
+					break;
+				}
+		long latency = System.nanoTime() - start;
+		SchedulerMetrics.getInstance().dispatched(latency);
+
+		if (assigned == null)
+			nRejected++;
+		else
+		{
+			nAssigned++;
+			revenue += r.getCost();
+		}
+		latencies.record(latency);
+		return new Decision(r, assigned, latency);
+	}
+
+	/**
+	 * Dispatch requests read from an input until it ends, writing one
+	 * decision a line. A line 'from to et lt' is a request and a line
+	 * holding just a time advances the simulated time to it.
+	 * 
+	 * @param in The input
+	 * @param out Where decisions are written
+	 * @param distances Distances between locations
+	 * @throws IOException If the input can't be read or a line is not a
+	 *             request or a time. The lines before it are served
+	 */
+	public void serve(InputReader in, PrintStream out, DistanceOracle distances)
+			throws IOException
+	{
+		try
+		{
+			while (in.hasNext())
+			{
+				int first = in.nextInt();
+				if (in.atEndOfLine())
+				{
+					advanceTo(first);
+					continue;
+				}
+				int line = in.line();
+				int to = in.nextInt();
+				if (first < 1 || first >= distances.V() || to < 1
+						|| to >= distances.V())
+					throw new IOException("Line " + line
+							+ " : Invalid request : " + first + "-" + to);
+				out.println(dispatch(DialARide.newRequest(first, to,
+						in.nextInt(), in.nextInt(), nAssigned + nRejected,
+						distances)));
+			}
+		}
+		finally
+		{
+			out.flush();
+		}
+	}
+
+	/**
+	 * @param p Percentile, between 0 and 100
+	 * @return Dispatch latency at the percentile in nanoseconds, rounded up
+	 *         by at most 12.5%. 0 if nothing was dispatched
+	 */
+	public long latency(double p)
+	{
+		return latencies.percentile(p);
+	}
+
+	public String toString()
+	{
+		return nAssigned + " requests out of " + (nAssigned + nRejected)
+				+ " assigned. Revenue = " + revenue + ". Latency p50 = "
+				+ latency(50) / 1000 + "us, p99 = " + latency(99) / 1000
+				+ "us";
+	}
+}
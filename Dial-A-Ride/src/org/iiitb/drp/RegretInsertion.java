@@ -0,0 +1,159 @@
+package org.iiitb.drp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts a batch of requests, the one with the largest regret first, into
+ * the taxi where it adds the least distance. The regret of a request is how
+ * much more distance the next k - 1 cheapest taxis would add, so requests
+ * about to lose their good options are inserted before those that have
+ * plenty.
+ *
+ * The cheapest insertion of every pending request into every taxi is cached.
+ * A commit changes the route of one taxi only, so only the insertions into
+ * that taxi are evaluated again, and the regret of a request is worked out
+ * again only if its k cheapest taxis may have changed.
+ *
+ * @author kempa
+ *
+ */
+class RegretInsertion
+{
+	// Regret for each of the k cheapest taxis that can't service a request
+	private static final long missing = 1 << 20;
+
+	private final ArrayList<Taxi> taxis;
+	private final int k;
+	private final SchedulerMetrics metrics;
+
+	// Of the batch being inserted, by position in the batch
+	private Insertion[][] cache; // Insertion into each taxi. null if none
+	private long[] regret; // -1 if no taxi can service the request
+	private int[] kth; // Cost of the k'th cheapest insertion. MAX_VALUE if
+						// fewer than k taxis can service the request
+
+	/**
+	 * @param taxis The taxis
+	 * @param k Number of cheapest taxis the regret is worked out over. 1
+	 *            inserts requests in batch order
+	 */
+	RegretInsertion(ArrayList<Taxi> taxis, int k)
+	{
+		if (k < 1)
+			throw new IllegalArgumentException("Regret over " + k + " taxis");
+		this.taxis = taxis;
+		this.k = k;
+		metrics = SchedulerMetrics.getInstance();
+	}
+
+	/**
+	 * Insert as many requests of a batch as possible. Ties in regret go to
+	 * the request listed first and ties in cost to the taxi listed first
+	 *
+	 * @param batch The requests
+	 * @return The insertions made, in the order they were
+	 */
+	ArrayList<Insertion> insert(List<Request> batch)
+	{
+		int B = batch.size(), T = taxis.size();
+		cache = new Insertion[B][T];
+		regret = new long[B];
+		kth = new int[B];
+		boolean[] pending = new boolean[B];
+		for (int b = 0; b < B; b++)
+		{
+			for (int t = 0; t < T; t++)
+				cache[b][t] = taxis.get(t).evaluate(batch.get(b));
+			rank(b);
+			pending[b] = true;
+		}
+
+		ArrayList<Insertion> inserted = new ArrayList<>();
+		while (true)
+		{
+			long start = System.nanoTime();
+			int chosen = -1;
+			for (int b = 0; b < B; b++)
+				if (pending[b])
+				{
+					if (regret[b] < 0)
+						pending[b] = false; // No taxi can service it, now or
+											// after more insertions
+					else if (chosen < 0 || regret[b] > regret[chosen])
+						chosen = b;
+				}
+			if (chosen < 0)
+				break;
+
+			int t = cheapest(cache[chosen]);
+			taxis.get(t).commit(cache[chosen][t]);
+			pending[chosen] = false;
+			inserted.add(cache[chosen][t]);
+
+			// Only the insertions into taxi t may have changed
+			Taxi taxi = taxis.get(t);
+			for (int b = 0; b < B; b++)
+				if (pending[b])
+				{
+					Insertion old = cache[b][t];
+					Insertion now = taxi.evaluate(batch.get(b));
+					cache[b][t] = now;
+					if (old != null && old.cost <= kth[b] || now != null
+							&& now.cost < kth[b])
+						rank(b);
+				}
+			metrics.dispatched(System.nanoTime() - start);
+		}
+		cache = null;
+		return inserted;
+	}
+
+	// Position of the cheapest insertion of a row, the first on a tie
+	private static int cheapest(Insertion[] row)
+	{
+		int best = -1;
+		for (int t = 0; t < row.length; t++)
+			if (row[t] != null && (best < 0 || row[t].cost < row[best].cost))
+				best = t;
+		return best;
+	}
+
+	// Work out the regret of the b'th request from its cached insertions
+	private void rank(int b)
+	{
+		// The k cheapest costs, in increasing order
+		int[] costs = new int[k];
+		int n = 0;
+		for (Insertion insertion : cache[b])
+		{
+			if (insertion == null)
+				continue;
+			int i;
+			if (n < k)
+				i = n++;
+			else if (insertion.cost < costs[k - 1])
+				i = k - 1;
+			else
+				continue;
+			while (i > 0 && costs[i - 1] > insertion.cost)
+			{
+				costs[i] = costs[i - 1];
+				i--;
+			}
+			costs[i] = insertion.cost;
+		}
+
+		if (n == 0)
+		{
+			regret[b] = -1;
+			kth[b] = Integer.MAX_VALUE;
+			return;
+		}
+		long r = (k - n) * missing;
+		for (int i = 1; i < n; i++)
+			r += costs[i] - costs[0];
+		regret[b] = r;
+		kth[b] = n == k ? costs[k - 1] : Integer.MAX_VALUE;
+	}
+}
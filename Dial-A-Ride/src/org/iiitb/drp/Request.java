@@ -32,6 +32,11 @@ public class Request implements Comparable<Request>
 		// return ((pickUp.lt - pickUp.et)- (l.lt - l.et)); // Based on pickup interval
 	}
 	
+	public int getId()
+	{
+		return id;
+	}
+
 	public int getCost()
 	{
 		return spCost;
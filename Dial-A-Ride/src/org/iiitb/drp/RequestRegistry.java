@@ -0,0 +1,226 @@
+package org.iiitb.drp;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * State of every request of a day, looked up and changed by request id in
+ * constant time. Requests are numbered in the order they are registered, and
+ * the numbers of the requests in each state are kept in a bit set, so the
+ * requests in a state are visited in that order, skipping the others a word
+ * at a time.
+ *
+ * @author kempa
+ *
+ */
+class RequestRegistry
+{
+	enum State
+	{
+		PENDING, // Not yet scheduled
+		ASSIGNED, // In the route of a taxi
+		PICKED_UP, // Assigned, its pickup retired from the route of the
+					// taxi. Can no longer be moved or withdrawn
+		REJECTED, // No taxi could service it
+		CANCELLED // Withdrawn by the customer
+	}
+
+	private static final State[] states = State.values();
+
+	private final Request[] requests; // By number
+	private final int[] number; // Of each request id. -1 for ids not in use
+	private final byte[] state; // Ordinal of the state, by number
+	private final int[] taxi; // Id of the taxi of an assigned request, by
+								// number
+	private final BitSet[] members; // Numbers of the requests in each state
+	private final int[] count; // Requests in each state
+
+	/**
+	 * @param requests The requests, all pending. Their ids must be distinct
+	 *            and not negative
+	 */
+	RequestRegistry(List<Request> requests)
+	{
+		int n = requests.size();
+		int maxId = -1;
+		for (Request r : requests)
+		{
+			if (r.getId() < 0)
+				throw new IllegalArgumentException("Negative id : " + r);
+			maxId = Math.max(maxId, r.getId());
+		}
+		number = new int[maxId + 1];
+		Arrays.fill(number, -1);
+		this.requests = new Request[n];
+		for (int i = 0; i < n; i++)
+		{
+			Request r = requests.get(i);
+			if (number[r.getId()] != -1)
+				throw new IllegalArgumentException("Duplicate id : " + r);
+			number[r.getId()] = i;
+			this.requests[i] = r;
+		}
+		state = new byte[n];
+		taxi = new int[n];
+		Arrays.fill(taxi, -1);
+		members = new BitSet[states.length];
+		for (int s = 0; s < states.length; s++)
+			members[s] = new BitSet(n);
+		count = new int[states.length];
+		members[State.PENDING.ordinal()].set(0, n);
+		count[State.PENDING.ordinal()] = n;
+	}
+
+	/**
+	 * @return Number of requests registered
+	 */
+	int size()
+	{
+		return requests.length;
+	}
+
+	/**
+	 * @param id A request id
+	 * @return The request with the id. null if none is registered
+	 */
+	Request request(int id)
+	{
+		return id >= 0 && id < number.length && number[id] >= 0
+				? requests[number[id]] : null;
+	}
+
+	State state(Request r)
+	{
+		return states[state[numberOf(r)]];
+	}
+
+	/**
+	 * @param r A request
+	 * @return Id of the taxi servicing it. -1 unless it is assigned
+	 */
+	int taxi(Request r)
+	{
+		return taxi[numberOf(r)];
+	}
+
+	/**
+	 * @param s A state
+	 * @return Number of requests in it
+	 */
+	int count(State s)
+	{
+		return count[s.ordinal()];
+	}
+
+	/**
+	 * Record that a taxi services a request, whatever its state was
+	 */
+	void assign(Request r, Taxi t)
+	{
+		int i = numberOf(r);
+		move(i, State.ASSIGNED);
+		taxi[i] = t.getId();
+	}
+
+	/**
+	 * Record that the pickup of an assigned request has been retired from
+	 * the route of its taxi. The taxi is kept
+	 */
+	void pickUp(Request r)
+	{
+		int i = numberOf(r);
+		if (state[i] != State.ASSIGNED.ordinal())
+			throw new IllegalArgumentException("Not assigned : " + r);
+		move(i, State.PICKED_UP);
+	}
+
+	void reject(Request r)
+	{
+		int i = numberOf(r);
+		move(i, State.REJECTED);
+		taxi[i] = -1;
+	}
+
+	void cancel(Request r)
+	{
+		int i = numberOf(r);
+		move(i, State.CANCELLED);
+		taxi[i] = -1;
+	}
+
+	private void move(int i, State to)
+	{
+		int from = state[i];
+		members[from].clear(i);
+		count[from]--;
+		members[to.ordinal()].set(i);
+		count[to.ordinal()]++;
+		state[i] = (byte) to.ordinal();
+	}
+
+	private int numberOf(Request r)
+	{
+		int id = r.getId();
+		if (id < 0 || id >= number.length || number[id] < 0
+				|| requests[number[id]] != r)
+			throw new IllegalArgumentException("Not registered : " + r);
+		return number[id];
+	}
+
+	/**
+	 * The requests in a state, in the order they were registered. The state
+	 * of the request last returned may be changed while iterating, that of
+	 * the others may not
+	 *
+	 * @param s The state
+	 * @return The requests
+	 */
+	Iterable<Request> in(final State s)
+	{
+		final BitSet set = members[s.ordinal()];
+		return new Iterable<Request>()
+		{
+			@Override
+			public Iterator<Request> iterator()
+			{
+				return new Iterator<Request>()
+				{
+					private int next = set.nextSetBit(0);
+
+					@Override
+					public boolean hasNext()
+					{
+						return next >= 0;
+					}
+
+					@Override
+					public Request next()
+					{
+						if (next < 0)
+							throw new NoSuchElementException();
+						Request r = requests[next];
+						next = set.nextSetBit(next + 1);
+						return r;
+					}
+
+					@Override
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	public String toString()
+	{
+		String str = "Requests :";
+		for (State s : states)
+			str += " " + count[s.ordinal()] + " " + s;
+		return str;
+	}
+}
@@ -0,0 +1,352 @@
+package org.iiitb.drp;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The ordered stops of a taxi, held in a growable array so that stops are
+ * reached by position in constant time and inserted or removed at a known
+ * position with a single block move.
+ * 
+ * Alongside the stops the route keeps, per position, the passenger load on
+ * leaving the stop and the forward time slack of the stop: how late the taxi
+ * may arrive there without any stop from there on missing its latest time.
+ * Both are recomputed whenever the route changes, so that insertions can be
+ * checked against them in constant time. The pair and tail methods leave
+ * that to a call of {@link #update(int, int)} once the times are set, which
+ * only recomputes them as far as they change.
+ * 
+ * @author kempa
+ * 
+ */
+public class Route implements Iterable<Stop>
+{
+	private Stop[] stops;
+	private int[] load; // Passengers in the taxi on leaving each stop
+	private int[] slack; // Forward time slack of each stop
+	private int size;
+	private int onBoard; // Passengers in the taxi before the first stop
+
+	public Route()
+	{
+		stops = new Stop[8];
+		load = new int[8];
+		slack = new int[8];
+		size = 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public Stop get(int position)
+	{
+		if (position < 0 || position >= size)
+			throw new IndexOutOfBoundsException("Position " + position
+					+ " of a route of " + size + " stops");
+		return stops[position];
+	}
+
+	/**
+	 * @param position Position of a stop
+	 * @return Number of passengers in the taxi on leaving the stop
+	 */
+	public int load(int position)
+	{
+		get(position);
+		return load[position];
+	}
+
+	/**
+	 * @param position Position of a stop
+	 * @return By how many minutes the arrival at the stop can be delayed
+	 *         without a stop from there on missing its latest time
+	 */
+	public int slack(int position)
+	{
+		get(position);
+		return slack[position];
+	}
+
+	/**
+	 * @return Number of passengers in the taxi before the first stop, picked
+	 *         up at stops already removed by removeFirst()
+	 */
+	public int onBoard()
+	{
+		return onBoard;
+	}
+
+	public Stop first()
+	{
+		return get(0);
+	}
+
+	public Stop last()
+	{
+		return get(size - 1);
+	}
+
+	/**
+	 * Insert a stop before the one at {@code position}. Stops from
+	 * {@code position} onwards move one place down the route.
+	 * 
+	 * @param position Position of the stop after insertion. Between 0 and
+	 *            size()
+	 * @param stop The stop
+	 */
+	public void add(int position, Stop stop)
+	{
+		if (position < 0 || position > size)
+			throw new IndexOutOfBoundsException("Position " + position
+					+ " of a route of " + size + " stops");
+		if (size == stops.length)
+		{
+			stops = Arrays.copyOf(stops, 2 * size);
+			load = Arrays.copyOf(load, 2 * size);
+			slack = Arrays.copyOf(slack, 2 * size);
+		}
+		System.arraycopy(stops, position, stops, position + 1, size - position);
+		stops[position] = stop;
+		size++;
+		update();
+	}
+
+	/**
+	 * Insert the pickup and drop of a request without updating loads and
+	 * slacks, as {@code add(pickUpPosition, pickUp)} followed by
+	 * {@code add(dropPosition, drop)} would. {@link #update(int, int)} must
+	 * follow
+	 * 
+	 * @param pickUpPosition Position of the pickup after insertion
+	 * @param pickUp The pickup
+	 * @param dropPosition Position of the drop after insertion. After
+	 *            pickUpPosition
+	 * @param drop The drop
+	 */
+	public void addPair(int pickUpPosition, Stop pickUp, int dropPosition,
+			Stop drop)
+	{
+		if (pickUpPosition < 0 || pickUpPosition > size
+				|| dropPosition <= pickUpPosition || dropPosition > size + 1)
+			throw new IndexOutOfBoundsException("Positions " + pickUpPosition
+					+ " and " + dropPosition + " of a route of " + size
+					+ " stops");
+		if (size + 2 > stops.length)
+		{
+			int length = Math.max(2 * stops.length, size + 2);
+			stops = Arrays.copyOf(stops, length);
+			load = Arrays.copyOf(load, length);
+			slack = Arrays.copyOf(slack, length);
+		}
+		open(pickUpPosition);
+		stops[pickUpPosition] = pickUp;
+		open(dropPosition);
+		stops[dropPosition] = drop;
+	}
+
+	// Move the stops, loads and slacks from position on one place down
+	private void open(int position)
+	{
+		int n = size - position;
+		System.arraycopy(stops, position, stops, position + 1, n);
+		System.arraycopy(load, position, load, position + 1, n);
+		System.arraycopy(slack, position, slack, position + 1, n);
+		size++;
+	}
+
+	/**
+	 * Remove the stops at two positions without updating loads and slacks.
+	 * {@link #update(int, int)} must follow
+	 * 
+	 * @param i Position of the first stop
+	 * @param j Position of the second stop. After i
+	 */
+	public void removePair(int i, int j)
+	{
+		get(i);
+		if (j <= i)
+			throw new IndexOutOfBoundsException("Position " + j
+					+ " not after " + i);
+		get(j);
+		close(j);
+		close(i);
+	}
+
+	// Move the stops, loads and slacks after position one place up
+	private void close(int position)
+	{
+		int n = size - position - 1;
+		System.arraycopy(stops, position + 1, stops, position, n);
+		System.arraycopy(load, position + 1, load, position, n);
+		System.arraycopy(slack, position + 1, slack, position, n);
+		stops[--size] = null;
+	}
+
+	/**
+	 * Remove the stop at {@code position}. Stops after it move one place up
+	 * the route.
+	 * 
+	 * @param position Position of the stop
+	 * @return The removed stop
+	 */
+	public Stop remove(int position)
+	{
+		Stop stop = get(position);
+		System.arraycopy(stops, position + 1, stops, position, size - position
+				- 1);
+		stops[--size] = null;
+		update();
+		return stop;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(stops, 0, size, null);
+		size = 0;
+		onBoard = 0;
+	}
+
+	/**
+	 * Replace the stops from {@code position} to the end of the route
+	 * without updating loads and slacks. {@link #update(int, int)} must
+	 * follow, from position to the end
+	 * 
+	 * @param position Position of the first stop replaced. Between 0 and
+	 *            size()
+	 * @param tail The new stops, in order
+	 * @return The stops replaced, in order
+	 */
+	public Stop[] replaceFrom(int position, Stop[] tail)
+	{
+		if (position < 0 || position > size)
+			throw new IndexOutOfBoundsException("Position " + position
+					+ " of a route of " + size + " stops");
+		Stop[] old = Arrays.copyOfRange(stops, position, size);
+		int length = position + tail.length;
+		if (length > stops.length)
+		{
+			length = Math.max(2 * stops.length, length);
+			stops = Arrays.copyOf(stops, length);
+			load = Arrays.copyOf(load, length);
+			slack = Arrays.copyOf(slack, length);
+		}
+		Arrays.fill(stops, position, size, null);
+		System.arraycopy(tail, 0, stops, position, tail.length);
+		size = position + tail.length;
+		return old;
+	}
+
+	/**
+	 * Remove the first n stops, as the taxi has been through them. Their
+	 * passengers who are yet to be dropped stay on board.
+	 * 
+	 * @param n Number of stops
+	 */
+	public void removeFirst(int n)
+	{
+		if (n < 0 || n > size)
+			throw new IndexOutOfBoundsException("Removing " + n
+					+ " stops of a route of " + size + " stops");
+		if (n > 0)
+			onBoard = load[n - 1];
+		System.arraycopy(stops, n, stops, 0, size - n);
+		Arrays.fill(stops, size - n, size, null);
+		size -= n;
+		update();
+	}
+
+	/**
+	 * Recompute the load and slack of every stop. Must be called when the
+	 * actual times of stops are changed other than through add()/remove().
+	 */
+	public void update()
+	{
+		update(0, size - 1);
+	}
+
+	/**
+	 * Recompute the load and slack of the stops after the stops from
+	 * {@code from} to {@code to} were inserted, removed or retimed by the
+	 * pair and tail methods or otherwise. The loads are recomputed from
+	 * {@code from} on, until they are as they were past {@code to}, and the
+	 * slacks from {@code to} back, until they are as they were before
+	 * {@code from}.
+	 * 
+	 * @param from First position changed
+	 * @param to Last position changed. The stops after it must have kept
+	 *            their times, their loads and slacks having moved with them
+	 */
+	public void update(int from, int to)
+	{
+		int nPassengers = from == 0 ? onBoard : load[from - 1];
+		for (int i = from; i < size; i++)
+		{
+			if (stops[i].type() == StopType.PICKUP)
+				nPassengers++;
+			else
+				nPassengers--;
+			if (i > to && load[i] == nPassengers)
+				break; // So are the loads after it
+			load[i] = nPassengers;
+		}
+
+		// A delay at a stop is passed on to the next one less the time the
+		// taxi would otherwise have waited there for its earliest time
+		for (int i = Math.min(to, size - 1); i >= 0; i--)
+		{
+			Stop s = stops[i];
+			int old = slack[i];
+			slack[i] = s.lt - s.at;
+			if (i < size - 1)
+			{
+				Stop next = stops[i + 1];
+				int wait = next.at - s.at - Taxi.shortestTime(s, next);
+				slack[i] = Math.min(slack[i], wait + slack[i + 1]);
+			}
+			if (i < from && slack[i] == old)
+				break; // So are the slacks before it
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<Stop> iterator()
+	{
+		return new Iterator<Stop>()
+		{
+			private int next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < size;
+			}
+
+			@Override
+			public Stop next()
+			{
+				if (next >= size)
+					throw new NoSuchElementException();
+				return stops[next++];
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
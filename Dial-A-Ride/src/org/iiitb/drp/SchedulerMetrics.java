@@ -0,0 +1,209 @@
+package org.iiitb.drp;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.iiitb.graphs.DijkstraSP;
+import org.iiitb.graphs.DistanceOracle;
+import org.iiitb.graphs.SPTreeCache;
+
+/**
+ * Counts of what the scheduler does and how long it takes, kept for the whole
+ * process. Counters are striped, so taxis evaluated on several threads at
+ * once do not contend for them. Exported over JMX by {@link #register}.
+ *
+ * @author kempa
+ *
+ */
+public final class SchedulerMetrics implements SchedulerMetricsMBean
+{
+	/**
+	 * Why a stop could not be placed between two others
+	 */
+	public enum Rejection
+	{
+		PREVIOUS_LATE, // The previous stop is done after the latest time
+		SAME_LOCATION, // Between two stops at the same place and time
+		UNREACHABLE, // Can't get there from the previous stop in time
+		NEXT_UNREACHABLE, // Can't get to the next stop in time from there
+		NOT_POSTPONABLE, // The stops after would have to be done too late
+		CAPACITY // The taxi would be full
+	}
+
+	private static final SchedulerMetrics instance = new SchedulerMetrics();
+
+	private final LongAdder insertionAttempts = new LongAdder();
+	private final LongAdder insertionSuccesses = new LongAdder();
+	private final LongAdder[] rejections;
+	private final LatencyHistogram schedule = new LatencyHistogram();
+	private final LatencyHistogram dispatch = new LatencyHistogram();
+	private volatile DistanceOracle distances; // Of the cache counts
+
+	private SchedulerMetrics()
+	{
+		rejections = new LongAdder[Rejection.values().length];
+		for (int i = 0; i < rejections.length; i++)
+			rejections[i] = new LongAdder();
+	}
+
+	public static SchedulerMetrics getInstance()
+	{
+		return instance;
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server, as
+	 * org.iiitb.drp:type=SchedulerMetrics
+	 *
+	 * @param distances The distances being used. Cache hits and misses are
+	 *            reported if it is an {@link SPTreeCache}
+	 * @throws JMException
+	 */
+	public static void register(DistanceOracle distances) throws JMException
+	{
+		instance.distances = distances;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("org.iiitb.drp:type=SchedulerMetrics");
+		if (!server.isRegistered(name))
+			server.registerMBean(instance, name);
+	}
+
+	// An evaluation of the insertion of a request into a taxi route
+	void attempted()
+	{
+		insertionAttempts.increment();
+	}
+
+	// A request inserted into a taxi route
+	void succeeded()
+	{
+		insertionSuccesses.increment();
+	}
+
+	void rejected(Rejection reason)
+	{
+		rejections[reason.ordinal()].increment();
+	}
+
+	// Time taken by Taxi.schedule()
+	void scheduled(long nanos)
+	{
+		schedule.record(nanos);
+	}
+
+	// Time taken to decide on the taxi of a request
+	void dispatched(long nanos)
+	{
+		dispatch.record(nanos);
+	}
+
+	public long getInsertionAttempts()
+	{
+		return insertionAttempts.sum();
+	}
+
+	public long getInsertionSuccesses()
+	{
+		return insertionSuccesses.sum();
+	}
+
+	public long rejections(Rejection reason)
+	{
+		return rejections[reason.ordinal()].sum();
+	}
+
+	public long getRejectedPreviousLate()
+	{
+		return rejections(Rejection.PREVIOUS_LATE);
+	}
+
+	public long getRejectedSameLocation()
+	{
+		return rejections(Rejection.SAME_LOCATION);
+	}
+
+	public long getRejectedUnreachable()
+	{
+		return rejections(Rejection.UNREACHABLE);
+	}
+
+	public long getRejectedNextUnreachable()
+	{
+		return rejections(Rejection.NEXT_UNREACHABLE);
+	}
+
+	public long getRejectedNotPostponable()
+	{
+		return rejections(Rejection.NOT_POSTPONABLE);
+	}
+
+	public long getRejectedCapacity()
+	{
+		return rejections(Rejection.CAPACITY);
+	}
+
+	public long getShortestPathTrees()
+	{
+		return DijkstraSP.searches();
+	}
+
+	public long getCacheHits()
+	{
+		DistanceOracle d = distances;
+		return d instanceof SPTreeCache ? ((SPTreeCache) d).hits() : 0;
+	}
+
+	public long getCacheMisses()
+	{
+		DistanceOracle d = distances;
+		return d instanceof SPTreeCache ? ((SPTreeCache) d).misses() : 0;
+	}
+
+	public long getScheduleCount()
+	{
+		return schedule.count();
+	}
+
+	public long getScheduleP50Micros()
+	{
+		return schedule.percentile(50) / 1000;
+	}
+
+	public long getScheduleP99Micros()
+	{
+		return schedule.percentile(99) / 1000;
+	}
+
+	public long getDispatchCount()
+	{
+		return dispatch.count();
+	}
+
+	public long getDispatchP50Micros()
+	{
+		return dispatch.percentile(50) / 1000;
+	}
+
+	public long getDispatchP99Micros()
+	{
+		return dispatch.percentile(99) / 1000;
+	}
+
+	public String toString()
+	{
+		String str = "Insertions : " + getInsertionAttempts() + " attempted, "
+				+ getInsertionSuccesses() + " succeeded\nStops rejected :";
+		for (Rejection reason : Rejection.values())
+			str += " " + reason + " " + rejections(reason);
+		return str + "\nShortest path trees : " + getShortestPathTrees()
+				+ "\nTaxi.schedule : " + getScheduleCount() + ", p50 "
+				+ getScheduleP50Micros() + "us, p99 "
+				+ getScheduleP99Micros() + "us\nDispatch : "
+				+ getDispatchCount() + ", p50 " + getDispatchP50Micros()
+				+ "us, p99 " + getDispatchP99Micros() + "us";
+	}
+}
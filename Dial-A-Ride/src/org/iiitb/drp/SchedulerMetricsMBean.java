@@ -0,0 +1,45 @@
+package org.iiitb.drp;
+
+/**
+ * Management interface of {@link SchedulerMetrics}. Latencies are in
+ * microseconds
+ * 
+ * @author kempa
+ * 
+ */
+public interface SchedulerMetricsMBean
+{
+	public long getInsertionAttempts();
+
+	public long getInsertionSuccesses();
+
+	public long getRejectedPreviousLate();
+
+	public long getRejectedSameLocation();
+
+	public long getRejectedUnreachable();
+
+	public long getRejectedNextUnreachable();
+
+	public long getRejectedNotPostponable();
+
+	public long getRejectedCapacity();
+
+	public long getShortestPathTrees();
+
+	public long getCacheHits();
+
+	public long getCacheMisses();
+
+	public long getScheduleCount();
+
+	public long getScheduleP50Micros();
+
+	public long getScheduleP99Micros();
+
+	public long getDispatchCount();
+
+	public long getDispatchP50Micros();
+
+	public long getDispatchP99Micros();
+}
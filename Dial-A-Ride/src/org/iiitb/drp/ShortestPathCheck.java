@@ -0,0 +1,147 @@
+package org.iiitb.drp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.iiitb.drp.InputGenerator.RoadNetwork;
+import org.iiitb.graphs.BidirectionalALT;
+import org.iiitb.graphs.CSRDigraph;
+import org.iiitb.graphs.ContractionHierarchy;
+import org.iiitb.graphs.DialSP;
+import org.iiitb.graphs.DijkstraSP;
+import org.iiitb.graphs.DistanceOracle;
+import org.iiitb.graphs.EdgeWeightedDigraph;
+
+/**
+ * Checks the shortest-path engines against {@link DijkstraSP} on generated
+ * maps of every shape. Each engine answers queries between random locations,
+ * and every distance must equal that found by Dijkstra's algorithm
+ *
+ * @author kempa
+ *
+ */
+public class ShortestPathCheck
+{
+	private static final String[] shapes = { "grid", "ring", "geometric" };
+	private static final int nLandmarks = 8; // Of the ALT engine
+
+	private final Random random;
+	private final int nQueries; // Per engine and map
+	private int nChecked;
+	private int nWrong;
+
+	/**
+	 * @param seed Seed of the maps and of the queries
+	 * @param nQueries Queries per engine and map
+	 */
+	public ShortestPathCheck(long seed, int nQueries)
+	{
+		random = new Random(seed);
+		this.nQueries = nQueries;
+	}
+
+	/**
+	 * Check an engine on a map of every shape
+	 *
+	 * @param engine ch, alt or dial. Dial's algorithm finds every distance
+	 *            from a source, all of which are checked
+	 * @param V Number of locations of the maps
+	 */
+	public void check(String engine, int V)
+	{
+		for (String shape : shapes)
+		{
+			EdgeWeightedDigraph map = generate(shape, V);
+			CSRDigraph G = new CSRDigraph(map);
+			DistanceOracle oracle = engine.equals("dial") ? null : oracle(
+					engine, G);
+			int wrong = nWrong;
+			for (int q = 0; q < nQueries; q++)
+			{
+				// Locations are numbered from 1
+				int s = 1 + random.nextInt(G.V() - 1);
+				int t = 1 + random.nextInt(G.V() - 1);
+				DijkstraSP sp = new DijkstraSP(G, s);
+				if (oracle != null)
+				{
+					expect(engine + " on " + shape + " from " + s + " to " + t,
+							sp.distance(t), oracle.distance(s, t));
+					continue;
+				}
+				DialSP dial = new DialSP(G, s);
+				for (int v = 0; v < G.V(); v++)
+					expect(engine + " on " + shape + " from " + s + " to " + v,
+							sp.distance(v), dial.distance(v));
+			}
+			System.out.println(engine + " on " + shape + " of " + (G.V() - 1)
+					+ " locations : " + (nWrong - wrong) + " distances wrong"
+					+ (oracle != null ? " of " + nQueries : " from " + nQueries
+							+ " sources"));
+		}
+	}
+
+	private static DistanceOracle oracle(String engine, CSRDigraph G)
+	{
+		if (engine.equals("ch"))
+			return new ContractionHierarchy(G,
+					ContractionHierarchy.WITNESS_LIMIT);
+		if (engine.equals("alt"))
+			return new BidirectionalALT(G, nLandmarks);
+		throw new IllegalArgumentException("Unknown engine : " + engine);
+	}
+
+	private void expect(String query, int expected, int actual)
+	{
+		nChecked++;
+		if (expected == actual)
+			return;
+		if (nWrong++ < 10)
+			System.out.println(query + " : " + actual + ", expected "
+					+ expected);
+	}
+
+	// The roads of a map as InputGenerator writes them
+	private EdgeWeightedDigraph generate(String shape, int V)
+	{
+		return RoadNetwork.of(shape, V, random.nextLong()).graph(random);
+	}
+
+	public String toString()
+	{
+		return nWrong + " of " + nChecked + " distances wrong";
+	}
+
+	public static void main(String[] args)
+	{
+		// Usage : ShortestPathCheck [-seed n] [-queries q] [-locations V]
+		// [engine ...]
+		// -seed : Seed of the maps and queries, 1 by default
+		// -queries : Queries per engine and map, 1000 by default
+		// -locations : Locations of each map, 2000 by default
+		// engine : ch, alt or dial. All of them by default
+		// Exits with status 1 if any distance is wrong
+		long seed = 1;
+		int nQueries = 1000;
+		int V = 2000;
+		int a = 0;
+		for (; a < args.length - 1 && args[a].startsWith("-"); a += 2)
+			if (args[a].equals("-seed"))
+				seed = Long.parseLong(args[a + 1]);
+			else if (args[a].equals("-queries"))
+				nQueries = Integer.parseInt(args[a + 1]);
+			else if (args[a].equals("-locations"))
+				V = Integer.parseInt(args[a + 1]);
+			else
+				System.exit(1);
+		String[] engines = a < args.length ? Arrays.copyOfRange(args, a,
+				args.length) : new String[] { "ch", "alt",
+				"dial" };
+
+		ShortestPathCheck check = new ShortestPathCheck(seed, nQueries);
+		for (String engine : engines)
+			check.check(engine, V);
+		System.out.println(check);
+		if (check.nWrong > 0)
+			System.exit(1);
+	}
+}
@@ -1,7 +1,6 @@
 package org.iiitb.drp;
 
-import org.iiitb.graphs.DijkstraSP;
-import org.iiitb.graphs.EdgeWeightedDigraph;
+import org.iiitb.graphs.DistanceOracle;
 
 /**
  * Models a pickup or drop in the schedule of a taxi.
@@ -14,17 +13,14 @@ public class Stop
 	int location;
 	int requestId; // requester of the stop?
 	StopType stopType;
-	private DijkstraSP sp;
-	EdgeWeightedDigraph g; // Needed only for clone()
+	DistanceOracle distances; // Shared by all stops on the same city map
 
 	final int et; // earliest pickup/delivery time
 	final int lt; // latest pickup/delivery time
 	int at; // actual pickup/delivery time
-	
-	int b_at;
 
 	public Stop(int location, int et, int lt, int requestId, StopType stopType,
-			EdgeWeightedDigraph g)
+			DistanceOracle distances)
 	{
 		this.location = location;
 		this.stopType = stopType;
@@ -32,8 +28,7 @@ public class Stop
 		this.lt = lt;
 		this.requestId = requestId;
 		this.at = et;
-		this.sp = new DijkstraSP(g, location);
-		this.g = g;
+		this.distances = distances;
 	}
 
 	public StopType type()
@@ -43,7 +38,7 @@ public class Stop
 
 	public int distTo(Stop w)
 	{
-		return (int) sp.distTo(w.location);
+		return distances.distance(location, w.location);
 	}
 
 	public String toString()
@@ -60,7 +55,7 @@ public class Stop
 	
 	protected Object clone()
 	{
-		Stop s = new Stop(location, et, lt, requestId, stopType, g);
+		Stop s = new Stop(location, et, lt, requestId, stopType, distances);
 		s.at = at;
 		return s;
 	}
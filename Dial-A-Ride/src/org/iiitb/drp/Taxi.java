@@ -1,10 +1,11 @@
 package org.iiitb.drp;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.logging.Logger;
 
-import org.iiitb.graphs.EdgeWeightedDigraph;
+import org.iiitb.drp.SchedulerMetrics.Rejection;
+import org.iiitb.graphs.DistanceOracle;
 
 public class Taxi
 {
@@ -12,22 +13,31 @@ public class Taxi
 	private int id;
 	private Stop startPoint;
 	private int capacity;
-	LinkedList<Stop> route;
+	Route route;
 	private Logger logger;
+	private SchedulerMetrics metrics;
 	int revenue;
+	private int completedDistance; // Of stops dropped by retire()
+	private int completedIdleTime; // Of stops dropped by retire()
 
-	public Taxi(int startPoint, int capacity, EdgeWeightedDigraph cityMap)
+	public Taxi(int startPoint, int capacity, DistanceOracle distances)
 			throws SecurityException, IOException
 	{
 		id = ++counter;
 		this.capacity = capacity;
 		this.startPoint = new Stop(startPoint, DialARide.dayStartTime,
-				DialARide.dayStartTime, -1, StopType.TAXI_LOCATION, cityMap);
-		route = new LinkedList<Stop>();
+				DialARide.dayStartTime, -1, StopType.TAXI_LOCATION, distances);
+		route = new Route();
 		logger = MyLogger.getInstance();
+		metrics = SchedulerMetrics.getInstance();
 		revenue = 0;
 	}
 
+	public int getId()
+	{
+		return id;
+	}
+
 	/**
 	 * Attempt insertion of a request into this taxi route.
 	 * 
@@ -35,273 +45,467 @@ public class Taxi
 	 * @return Was the insertion successful?
 	 */
 	public boolean schedule(Request r)
+	{
+		long start = System.nanoTime();
+		Insertion insertion = evaluate(r);
+		if (insertion != null)
+			commit(insertion);
+		metrics.scheduled(System.nanoTime() - start);
+		return insertion != null;
+	}
+
+	/**
+	 * Find the cheapest way of inserting a request into this taxi route. The
+	 * route is only read, never modified. All (pickup position, drop
+	 * position) pairs are tried and the one adding the least distance to the
+	 * route is chosen, the earliest positions winning ties.
+	 * 
+	 * @param r The request to be inserted
+	 * @return The cheapest feasible insertion. null if there is none
+	 */
+	Insertion evaluate(Request r)
+	{
+		return evaluate(r, null);
+	}
+
+	/**
+	 * Distance added by inserting a request into this taxi route were another
+	 * request withdrawn from it, as by {@link #withdraw}. The route is only
+	 * read. The other stops are taken to keep their times, which withdrawal
+	 * could only bring forward, so the insertion is feasible after the
+	 * withdrawal if it is found feasible here, and costs no more
+	 * 
+	 * @param r The request to be inserted
+	 * @param without A request serviced by this taxi
+	 * @return The distance added. -1 if no insertion is found feasible
+	 */
+	int costWithout(Request r, Request without)
+	{
+		Insertion insertion = evaluate(r, without);
+		return insertion == null ? -1 : insertion.cost;
+	}
+
+	// Find the cheapest insertion of r into the route as it is, or as if the
+	// stops of without were skipped. The positions of the insertion are then
+	// those in the route without them, and it must not be committed
+	private Insertion evaluate(Request r, Request without)
 	{
 		Stop pickUpPoint = r.pickUp;
 		Stop dropPoint = r.drop;
-
-		logger.info("\nAttempting to service " + r + " through taxi " + id);
-		if (route.isEmpty())
+		// Local to the call, as taxis may be evaluated concurrently
+		View view = without == null ? new View(route, Integer.MAX_VALUE,
+				Integer.MAX_VALUE) : new View(route, positionOf(without.pickUp),
+				positionOf(without.drop));
+		int n = route.size() - (without == null ? 0 : 2);
+		Insertion best = null;
+		metrics.attempted();
+
+		if (logger.isLoggable(MyLogger.TRACE))
+			logger.log(MyLogger.TRACE, "\nAttempting to service " + r
+					+ " through taxi " + id);
+
+		// Attempt inserting pickUpPoint before the i'th stop of the route
+		for (int i = 0; i <= n; i++)
 		{
-			if (insertStop(0, pickUpPoint))
-				if (insertStop(route.size(), dropPoint))
-				{
-					revenue += pickUpPoint.distTo(dropPoint) * DialARide.ratePerKm;
-					return true;
-				}
-			while (!route.isEmpty())
-				route.remove();
-			return false;
-		}
-
-		// Attempt inserting pickUpPoint into the route
-		int nPassengers = 0;
-		for (int i = 0; i <= route.size(); i++)
-		{// No iterator as there is a need to modify list
-			Stop prevStop = null;
-			if (i != 0)
-			{
-				prevStop = route.get(i - 1);
-				// Count passengers still in the car before nextStop
-				if (prevStop.type() == StopType.PICKUP)
-					nPassengers++;
-				else
-					nPassengers--;
-			}
+			// Passengers still in the car before nextStop
+			int nPassengers = i == 0 ? route.onBoard() : view.load(i - 1);
 			if (nPassengers >= capacity)
+			{
+				metrics.rejected(Rejection.CAPACITY);
 				continue; // try inserting after a later stop. Maybe somebody
 							// would have been dropped
-
-			Stop nextStop = null;
-			if (i < route.size())
-			{
-				nextStop = route.get(i);
-				if (pickUpPoint.et > nextStop.lt)
-					continue;
 			}
 
-			// Backup 'taxi state' as might have to revert back if insertion of
-			// pickUpPoint is unsuccessful(Due to taxi overflow discovered while
-			// trying to insert dropPoint)
-			for (Stop s : route)
-				s.b_at = s.at;
-			int tmpNPassengers = nPassengers;
-
-			// Attempt insertion of pickUpPoint before nextStop
-			int insertPosition = route.size();
-			if (i < route.size())
-				insertPosition = route.indexOf(nextStop);
-			if (!insertStop(insertPosition, pickUpPoint))
-			{
-				for (Stop s : route)
-					s.b_at = s.at;
+			Stop prevStop = i == 0 ? startPoint : view.stop(i - 1);
+			Stop nextStop = i < n ? view.stop(i) : null;
+			if (nextStop != null && pickUpPoint.et > nextStop.lt)
 				continue;
-			}
 
-			// Find a stop after pickUpPoint before which insertion of dropPoint
-			// can be attempted
-			Stop nextOfDropPoint = null;
-			prevStop = pickUpPoint;
-			boolean exceededCapacity = false;
-			for (int k = insertPosition + 1; k < route.size(); k++, prevStop = nextOfDropPoint)
-			{// not using iterator as I need to modify the list
+			int pickUpAt = evaluateStop(prevStop, prevStop.at, pickUpPoint,
+					nextStop, nextStop == null ? 0 : nextStop.at,
+					nextStop == null ? 0 : view.slack(i));
+			if (pickUpAt < 0)
+				continue;
+			int pickUpCost = detour(prevStop, pickUpPoint, nextStop);
 
-				nextOfDropPoint = route.get(k);
+			// Delays of the j'th stop and the one before it due to the
+			// insertion of pickUpPoint
+			int delay = 0, prevDelay = 0;
+			if (nextStop != null)
+				delay = Math.max(0, pickUpAt
+						+ shortestTime(pickUpPoint, nextStop) - nextStop.at);
 
-				// Continue counting passengers
-				if (prevStop.type() == StopType.PICKUP)
-					nPassengers++;
-				else
-					nPassengers--;
+			// Attempt inserting dropPoint before the j'th stop of the route
+			for (int j = i; j <= n; j++)
+			{
+				Stop prevOfDropPoint = j == i ? pickUpPoint : view.stop(j - 1);
+				int prevAt = j == i ? pickUpAt : prevOfDropPoint.at
+						+ prevDelay;
+				Stop nextOfDropPoint = j < n ? view.stop(j) : null;
 
-				if (nPassengers > capacity)
+				if (nextOfDropPoint != null)
 				{
-					// The insertion of pickupPoint is resulting in an
-					// earlier scheduled passenger getting elbowed out. Try
-					// inserting the pickUp point at a later stop
-					// Restore taxi-state
-					route.remove(pickUpPoint);
-					for (Stop s : route)
-						s.at = s.b_at;
-					nPassengers = tmpNPassengers;
-
-					logger.info("Exceeded capacity. Passengers are "
-							+ nPassengers + " between stops " + prevStop
-							+ " and " + nextOfDropPoint
-							+ ". Need reinsert pickup point, " + pickUpPoint
-							+ ", elsewhere");
-					exceededCapacity = true;
-					break;
+					// Passengers in the car between prevOfDropPoint and
+					// nextOfDropPoint
+					nPassengers = (j == i ? nPassengers : view.load(j - 1)) + 1;
+					if (nPassengers > capacity)
+					{
+						metrics.rejected(Rejection.CAPACITY);
+						// The insertion of pickupPoint would result in an
+						// earlier scheduled passenger getting elbowed out. Try
+						// inserting the pickUp point at a later stop
+						if (logger.isLoggable(MyLogger.TRACE))
+							logger.log(MyLogger.TRACE,
+									"Exceeded capacity. Passengers are "
+											+ nPassengers + " between stops "
+											+ prevOfDropPoint + " and "
+											+ nextOfDropPoint
+											+ ". Need reinsert pickup point, "
+											+ pickUpPoint + ", elsewhere");
+						break;
+					}
 				}
 
-				// Attempt insertion of dropPoint before nextOfDropPoint
-				if (!insertStop(route.indexOf(nextOfDropPoint), dropPoint))
+				int dropAt = evaluateStop(prevOfDropPoint, prevAt, dropPoint,
+						nextOfDropPoint, nextOfDropPoint == null ? 0
+								: nextOfDropPoint.at + delay,
+						nextOfDropPoint == null ? 0 : view.slack(j) - delay);
+				if (dropAt >= 0)
 				{
-					// Try in further positions
-					continue;
+					int cost = pickUpCost
+							+ detour(prevOfDropPoint, dropPoint,
+									nextOfDropPoint);
+					if (best == null || cost < best.cost)
+						best = new Insertion(this, r, i, j + 1, pickUpAt,
+								dropAt, cost);
 				}
-				revenue += pickUpPoint.distTo(dropPoint) * DialARide.ratePerKm;
-				return true;
-			}
-			if (!exceededCapacity)
-			{
-				// Try inserting dropPoint in last position
-				if (insertStop(route.size(), dropPoint))
-				{
-					revenue += pickUpPoint.distTo(dropPoint) * DialARide.ratePerKm;
-					return true;
-				}
-				else
+
+				// Carry the delay over to the next stop less the time the
+				// taxi would have waited there anyway
+				prevDelay = delay;
+				if (j < n - 1)
 				{
-					route.remove(pickUpPoint);
-					route.remove(dropPoint);
-					for (Stop s : route)
-						s.at = s.b_at;
-					nPassengers = tmpNPassengers;
+					Stop s = view.stop(j), next = view.stop(j + 1);
+					int wait = next.at - s.at - shortestTime(s, next);
+					delay = Math.max(0, delay - wait);
 				}
 			}
 		}
-		return false;
+		return best;
+	}
+
+	// The route as seen by evaluate(), without the stops at two positions
+	private static class View
+	{
+		private final Route route;
+		private final int skipPickUp, skipDrop; // Past the end if none
+
+		View(Route route, int skipPickUp, int skipDrop)
+		{
+			this.route = route;
+			this.skipPickUp = skipPickUp;
+			this.skipDrop = skipDrop;
+		}
+
+		// Route position of the k'th stop not skipped
+		private int position(int k)
+		{
+			if (k >= skipPickUp)
+				k++;
+			if (k >= skipDrop)
+				k++;
+			return k;
+		}
+
+		Stop stop(int k)
+		{
+			return route.get(position(k));
+		}
+
+		// Passengers on board after the k'th stop not skipped. The passenger
+		// skipped is on board from its pickup to its drop
+		int load(int k)
+		{
+			int i = position(k);
+			return route.load(i) - (i > skipPickUp && i < skipDrop ? 1 : 0);
+		}
+
+		// Slack of the route at the k'th stop not skipped. Skipping stops can
+		// only add to it, so this is a lower bound
+		int slack(int k)
+		{
+			return route.slack(position(k));
+		}
 	}
 
 	/**
-	 * Insert a stop(pickup/drop) into this taxi route.
+	 * Check whether a stop can be inserted between two stops of this taxi
+	 * route, given when the taxi would be at them were the route to change.
 	 * 
-	 * @param stop The pickup or drop request.
-	 * @param position The position of the stop in the route.
-	 * @param route This taxi route.
-	 * @return Was the route able to accommodate the requested stop?
+	 * @param prevStop The stop after which the taxi would head to stop
+	 * @param prevAt Actual time of prevStop
+	 * @param stop The pickup or drop to be inserted
+	 * @param nextStop The stop the taxi would head to after stop. null if
+	 *            stop would be the last
+	 * @param nextAt Actual time of nextStop
+	 * @param nextSlack Forward time slack of nextStop
+	 * @return Actual time of stop. -1 if stop can't be accommodated
 	 */
-	boolean insertStop(int position, Stop stop)
+	private int evaluateStop(Stop prevStop, int prevAt, Stop stop,
+			Stop nextStop, int nextAt, int nextSlack)
 	{
-		Stop tmpStop = new Stop(stop.location, stop.et, stop.lt,
-				stop.requestId, stop.stopType, stop.g);
+		if (logger.isLoggable(MyLogger.TRACE))
+			logger.log(MyLogger.TRACE, "Attempting to add " + stop
+					+ " into taxi " + id
+					+ (prevStop == startPoint ? " in the first position"
+							: nextStop == null ? " in the last position, after "
+									+ prevStop : " between " + prevStop
+									+ " and " + nextStop));
+
+		if (prevAt > stop.lt)
+		{
+			if (logger.isLoggable(MyLogger.TRACE))
+				logger.log(MyLogger.TRACE, "Previous stop AT > LT");
+			metrics.rejected(Rejection.PREVIOUS_LATE);
+			return -1;
+		}
 
-		if (position > route.size() || position < 0)
-			return false;
+		if (prevStop != startPoint && nextStop != null
+				&& prevStop.location == nextStop.location && prevAt == nextAt)
+		{
+			if (logger.isLoggable(MyLogger.TRACE))
+				logger.log(MyLogger.TRACE, "Not scheduling " + stop
+						+ " inbetween stops having the same location");
+			metrics.rejected(Rejection.SAME_LOCATION);
+			return -1; // Don't schedule a request in between
+						// pickup/drops at the same location
+		}
 
-		if (position == 0)
+		// Can taxi make it from prevStop to this stop within time
+		// constraints
+		if (prevAt + shortestTime(prevStop, stop) > stop.lt)
 		{
-			assert stop.type() == StopType.PICKUP;
-			logger.info("Attempting to add " + tmpStop + " into taxi " + id
-					+ " in the first position");
+			if (logger.isLoggable(MyLogger.TRACE))
+				logger.log(MyLogger.TRACE, "Can't reach " + stop.location
+						+ " from " + prevStop.location + " in time(Need "
+						+ shortestTime(prevStop, stop) + " min)");
+			metrics.rejected(Rejection.UNREACHABLE);
+			return -1;
+		}
 
-			// Can taxi reach pickup point before its window closes?
-			if (startPoint.at + shortestTime(startPoint, stop) > stop.lt)
-			{
-				logger.info("Can't reach " + stop.location + " from "
-						+ startPoint + " in time(Need "
-						+ shortestTime(startPoint, stop) + " min)");
-				return false;
-			}
-			stop.at = startPoint.at + shortestTime(startPoint, stop);
-			if (stop.at < stop.et)
-				stop.at = stop.et;
-
-			// Adjust the actual pickup/drop times of all subsequent stops to
-			// reflect their postponed pickup/drop time due to the introduction
-			// of this stop into the schedule
-			if (!route.isEmpty())
-			{
-				Stop nextStop = route.get(position);
-				if (stop.at + shortestTime(stop, nextStop) > nextStop.at)
-				{
-					if (!postponeAllFromStop(nextStop, stop))
-					{
-						logger.info("Can't postpone future scheduled stops");
-						// To do : Remove a lesser revenue future scheduled stop
-						return false;
-					}
-				}
-			}
+		int at = prevAt + shortestTime(prevStop, stop);
+		if (at < stop.et)
+			at = stop.et;
+		if (nextStop == null)
+			return at;
+
+		// Can taxi make it from this stop to the next with
+		int t = at + shortestTime(stop, nextStop);
+		if (t > nextStop.lt)
+		{
+			if (logger.isLoggable(MyLogger.TRACE))
+				logger.log(MyLogger.TRACE, "Can't reach " + nextStop.location
+						+ " from " + stop.location + " in time(Need "
+						+ shortestTime(stop, nextStop) + " min)");
+			metrics.rejected(Rejection.NEXT_UNREACHABLE);
+			return -1;
 		}
-		else if (position == route.size())
-		{// To do : merge this with the else block
-			Stop prevStop = route.getLast();
-			logger.info("Attempting to add " + tmpStop + " into taxi " + id
-					+ " in the last position, after " + prevStop);
-			if (prevStop.at > stop.lt)
-			{
-				logger.info("Previous stop AT > LT");
-				return false;
-			}
 
-			if (prevStop.at + shortestTime(prevStop, stop) > stop.lt)
-			{
-				logger.info("Can't reach " + stop.location + " from "
-						+ prevStop.location + " in time(Need "
-						+ shortestTime(prevStop, stop) + " min)");
-				return false;
-			}
+		// If this stop is not on the way from previous stop to the next
+		// stop the actual times of all subsequent stops will have to be
+		// postponed. Can they be?
+		if (t - nextAt > nextSlack)
+		{
+			if (logger.isLoggable(MyLogger.TRACE))
+				logger.log(MyLogger.TRACE,
+						"Can't postpone future scheduled stops");
+			metrics.rejected(Rejection.NOT_POSTPONABLE);
+			return -1;
+		}
+		return at;
+	}
+
+	// Additional distance travelled by visiting stop between prevStop and
+	// nextStop
+	private static int detour(Stop prevStop, Stop stop, Stop nextStop)
+	{
+		if (nextStop == null)
+			return prevStop.distTo(stop);
+		return prevStop.distTo(stop) + stop.distTo(nextStop)
+				- prevStop.distTo(nextStop);
+	}
 
-			stop.at = prevStop.at + shortestTime(prevStop, stop);
-			if (stop.at < stop.et)
-				stop.at = stop.et;
+	/**
+	 * Insert a request into this taxi route as evaluated. The actual times of
+	 * the stops following the pickup are postponed as needed.
+	 * 
+	 * @param insertion An insertion found by evaluate() on the route as it
+	 *            still is
+	 */
+	void commit(Insertion insertion)
+	{
+		Stop pickUpPoint = insertion.request.pickUp;
+		Stop dropPoint = insertion.request.drop;
+		assert insertion.taxi == this;
+		metrics.succeeded();
+
+		pickUpPoint.at = insertion.pickUpAt;
+		route.addPair(insertion.pickUpPosition, pickUpPoint,
+				insertion.dropPosition, dropPoint);
+		Stop prevStop = pickUpPoint;
+		int last = insertion.dropPosition; // Last stop whose time changed
+		for (int i = insertion.pickUpPosition + 1; i < route.size(); i++)
+		{
+			Stop s = route.get(i);
+			int at = Math.max(prevStop.at + shortestTime(prevStop, s), s.et);
+			if (i > insertion.dropPosition && at == s.at)
+				break; // So are the times of the stops after it
+			s.at = at;
+			assert s.at <= s.lt;
+			last = i;
+			prevStop = s;
 		}
-		else
+		assert dropPoint.at == insertion.dropAt;
+		route.update(insertion.pickUpPosition, last);
+		checkScheduleAfterInsertion(dropPoint);
+		revenue += pickUpPoint.distTo(dropPoint) * DialARide.ratePerKm;
+
+		if (logger.isLoggable(MyLogger.TRACE))
 		{
-			Stop prevStop = route.get(position - 1);
-			assert prevStop != null;
-			Stop nextStop = route.get(position);
+			logger.log(MyLogger.TRACE, "Added " + pickUpPoint + " and "
+					+ dropPoint + " to taxi " + id);
+			logger.log(MyLogger.TRACE, toString());
+		}
+	}
 
-			logger.info("Attempting to add " + tmpStop + " into taxi " + id
-					+ " between " + prevStop + " and " + nextStop);
+	/**
+	 * Distance saved by removing a request from this taxi route. The route is
+	 * only read
+	 * 
+	 * @param r A request serviced by this taxi
+	 * @return The distance
+	 */
+	int withdrawalSaving(Request r)
+	{
+		return saving(positionOf(r.pickUp), positionOf(r.drop));
+	}
 
-			if (prevStop.at > stop.lt)
-			{
-				logger.info("Previous stop AT > LT");
-				return false;
-			}
-			
-			if (prevStop.location == nextStop.location
-					&& prevStop.at == nextStop.at)
-			{
-				logger.info("Not scheduling " + stop
-						+ " inbetween stops having the same location");
-				return false; // Don't schedule a request in between
-								// pickup/drops at the same location
-			}
-			
+	/**
+	 * Remove a request from this taxi route. The stops after its pickup are
+	 * brought forward as far as their earliest times allow, which can't make
+	 * any of them late.
+	 * 
+	 * @param r A request serviced by this taxi
+	 * @return The insertion that puts the request back as it was, costing the
+	 *         distance saved by its removal
+	 */
+	Insertion withdraw(Request r)
+	{
+		int i = positionOf(r.pickUp), j = positionOf(r.drop);
+		Insertion undo = new Insertion(this, r, i, j, r.pickUp.at, r.drop.at,
+				saving(i, j));
+		route.removePair(i, j);
+		retime(i);
+		revenue -= r.pickUp.distTo(r.drop) * DialARide.ratePerKm;
+		return undo;
+	}
 
-			// Can taxi make it from prevStop to this stop within time
-			// constraints
-			if (prevStop.at + shortestTime(prevStop, stop) > stop.lt)
-			{
-				logger.info("Can't reach " + stop.location + " from "
-						+ prevStop.location + " in time(Need "
-						+ shortestTime(prevStop, stop) + " min)");
-				return false;
-			}
+	/**
+	 * Exchange the stops of this route from a position on with those of
+	 * another route from a position on. Both taxis must be empty at those
+	 * positions, and the stops moved must be able to follow their new
+	 * predecessors in time.
+	 * 
+	 * @param position Position in this route
+	 * @param other The other taxi
+	 * @param otherPosition Position in the route of the other taxi
+	 */
+	void swapTails(int position, Taxi other, int otherPosition)
+	{
+		assert loadBefore(position) == 0
+				&& other.loadBefore(otherPosition) == 0;
+		Stop[] theirs = other.route.replaceFrom(otherPosition, new Stop[0]);
+		Stop[] mine = route.replaceFrom(position, theirs);
+		other.route.replaceFrom(otherPosition, mine);
+		int moved = revenue(mine) - revenue(theirs);
+		revenue -= moved;
+		other.revenue += moved;
+		retime(position);
+		other.retime(otherPosition);
+	}
 
-			stop.at = prevStop.at + shortestTime(prevStop, stop);
-			if (stop.at < stop.et)
-				stop.at = stop.et;
+	// Revenue of the requests picked up and dropped among stops
+	private static int revenue(Stop[] stops)
+	{
+		HashMap<Integer, Stop> pickUps = new HashMap<>();
+		int revenue = 0;
+		for (Stop s : stops)
+			if (s.stopType == StopType.PICKUP)
+				pickUps.put(s.requestId, s);
+			else
+				revenue += pickUps.remove(s.requestId).distTo(s)
+						* DialARide.ratePerKm;
+		return revenue;
+	}
 
-			// Can taxi make it from this stop to the next with
-			int t = stop.at + shortestTime(stop, nextStop);
-			if (t > nextStop.lt)
-			{
-				logger.info("Can't reach " + nextStop.location + " from "
-						+ stop.location + " in time(Need "
-						+ shortestTime(stop, nextStop) + " min)");
-				return false;
-			}
+	// Distance saved by removing the pickup at position i and the drop at j
+	private int saving(int i, int j)
+	{
+		Stop pickUp = route.get(i), drop = route.get(j);
+		Stop prev = stopBefore(i);
+		Stop next = j + 1 < route.size() ? route.get(j + 1) : null;
+		if (j == i + 1)
+			return detour(prev, pickUp, drop) + detour(prev, drop, next);
+		return detour(prev, pickUp, route.get(i + 1))
+				+ detour(route.get(j - 1), drop, next);
+	}
 
-			// If this stop is not on the way from previous stop to the next
-			// stop will have to adjust the actual pickup time of all subsequent
-			// stops
-			if (nextStop.at < t)
-				if (!postponeAllFromStop(nextStop, stop))
-				{
-					logger.info("Can postpone future scheduled stops");
-					return false;
-				}
+	// Make every stop from position on as early as the stop before it and
+	// its earliest time allow
+	private void retime(int position)
+	{
+		Stop prev = stopBefore(position);
+		for (int k = position; k < route.size(); k++)
+		{
+			Stop s = route.get(k);
+			s.at = Math.max(prev.at + shortestTime(prev, s), s.et);
+			prev = s;
 		}
-		route.add(position, stop);
-		checkScheduleAfterInsertion(stop);
+		route.update(position, route.size() - 1);
+	}
+
+	private int positionOf(Stop s)
+	{
+		for (int i = 0; i < route.size(); i++)
+			if (route.get(i) == s)
+				return i;
+		throw new IllegalArgumentException(s + " is not in the route of taxi "
+				+ id);
+	}
+
+	/**
+	 * @param position Position in the route. Up to its size
+	 * @return The stop the taxi comes from to the stop at position. Its start
+	 *         point for the first
+	 */
+	Stop stopBefore(int position)
+	{
+		return position == 0 ? startPoint : route.get(position - 1);
+	}
+
+	/**
+	 * @param position Position in the route. Up to its size
+	 * @return Number of passengers in the taxi on reaching the stop at
+	 *         position
+	 */
+	int loadBefore(int position)
+	{
+		return position == 0 ? route.onBoard() : route.load(position - 1);
+	}
 
-		logger.info("Added " + tmpStop + " to taxi " + id);
-		logger.info(toString());
-		return true;
+	int capacity()
+	{
+		return capacity;
 	}
 
 	public void checkScheduleAfterInsertion(Stop stop)
@@ -328,7 +532,7 @@ public class Taxi
 	public void check()
 	{
 		Stop p = startPoint;
-		int nPassengers = 0;
+		int nPassengers = route.onBoard();
 		for (Stop s : route)
 		{
 			// Distance between two stops is atleast the shortest path time
@@ -370,46 +574,11 @@ public class Taxi
 		}
 	}
 
-	int shortestTime(Stop v, Stop w)
+	static int shortestTime(Stop v, Stop w)
 	{
 		return (int) (v.distTo(w)) * DialARide.timePerKm;
 	}
 
-	private boolean canPostpone(Stop stop, Stop prevStop)
-	{
-		Stop p = prevStop;
-		int sAt, pAt = prevStop.at;
-		for (int i = route.indexOf(stop); i < route.size(); i++)
-		{
-			Stop s = route.get(i);
-			sAt = pAt + shortestTime(p, s);
-			if (sAt > s.lt)
-				return false;
-			if (sAt < s.et)
-				sAt = s.et;
-			p = s;
-			pAt = sAt;
-		}
-		return true;
-	}
-
-	private boolean postponeAllFromStop(Stop stop, Stop prevStop)
-	{
-		if (!canPostpone(stop, prevStop))
-			return false;
-
-		for (int i = route.indexOf(stop); i < route.size(); i++)
-		{
-			Stop s = route.get(i);
-			s.at = prevStop.at + shortestTime(prevStop, s);
-			if (s.at < s.et)
-				s.at = s.et;
-			assert s.at <= s.lt; // did
-			prevStop = s;
-		}
-		return true;
-	}
-
 	public String toString()
 	{
 		String str = "Taxi " + id + " : " + startPoint;
@@ -418,8 +587,9 @@ public class Taxi
 
 		str += "(" + startPoint.location + ")";
 		Stop p = startPoint;
-		for (Stop s : route)
+		for (int i = 0; i < route.size(); i++)
 		{
+			Stop s = route.get(i);
 			str += " --(" + shortestTime(p, s);
 
 			if (s.at - p.at > shortestTime(p, s))
@@ -436,9 +606,9 @@ public class Taxi
 					+ s.at + "-" + s.lt + "])";
 
 			p = s;
-			if (route.getLast().equals(s))
+			if (i == route.size() - 1)
 				str += " ---IDLE for "
-						+ (DialARide.dayEndTime - route.getLast().at)
+						+ (DialARide.dayEndTime - s.at)
 						+ " min--- ";
 		}
 		return str;
@@ -446,22 +616,81 @@ public class Taxi
 
 	public int dist(int time, Stop dest)
 	{
-		if (route.isEmpty())
-			return startPoint.distTo(dest);
+		return stopAt(time).distTo(dest);
+	}
 
-		if (time < route.getFirst().et)
-			return route.getFirst().distTo(dest);
+	/**
+	 * Where is this taxi at some time?
+	 * 
+	 * @param time The time
+	 * @return The last stop the taxi reaches by {@code time}. Its start
+	 *         point if there is none
+	 */
+	Stop stopAt(int time)
+	{
+		// Actual times never decrease along the route
+		int lo = 0, hi = route.size();
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (route.get(mid).at <= time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo == 0 ? startPoint : route.get(lo - 1);
+	}
 
-		for (Stop s : route)
-			if (time > s.et)
-				return s.distTo(dest);
-		return route.getLast().distTo(dest);
+	/**
+	 * Drop the stops the taxi has been through by some time. The last of
+	 * them becomes the point the rest of the route starts from. A taxi with
+	 * nothing left to do waits where it is until {@code time}.
+	 * 
+	 * @param time The time
+	 */
+	public void complete(int time)
+	{
+		retire(time + 1);
+		if (route.isEmpty() && startPoint.at < time)
+		{
+			completedIdleTime += time - startPoint.at;
+			startPoint = new Stop(startPoint.location, time, time, -1,
+					StopType.TAXI_LOCATION, startPoint.distances);
+		}
+	}
 
+	/**
+	 * Drop the stops done before some time, so that they can no longer be
+	 * postponed. The last of them becomes the point the rest of the route
+	 * starts from.
+	 * 
+	 * @param time The time
+	 * @return The stops dropped, in order
+	 */
+	Stop[] retire(int time)
+	{
+		int n = 0;
+		Stop p = startPoint;
+		for (; n < route.size() && route.get(n).at < time; n++)
+		{
+			Stop s = route.get(n);
+			completedDistance += p.distTo(s);
+			completedIdleTime += (s.at - p.at) - shortestTime(p, s);
+			p = s;
+		}
+		Stop[] retired = new Stop[n];
+		for (int i = 0; i < n; i++)
+			retired[i] = route.get(i);
+		route.removeFirst(n);
+		if (p != startPoint)
+			startPoint = new Stop(p.location, p.at, p.at, -1,
+					StopType.TAXI_LOCATION, p.distances);
+		return retired;
 	}
 
 	public int distanceTravelled()
 	{
-		int distance = 0;
+		int distance = completedDistance;
 		Stop p = startPoint;
 		for (Stop s : route)
 		{
@@ -473,14 +702,14 @@ public class Taxi
 
 	public int idleTime()
 	{
-		int idleTime = 0;
+		int idleTime = completedIdleTime;
 		Stop p = startPoint;
 		for (Stop s : route)
 		{
 			idleTime += (s.at - p.at) - DialARide.timePerKm * p.distTo(s);
 			p = s;
 		}
-		idleTime += DialARide.dayEndTime - route.getLast().at;
+		idleTime += DialARide.dayEndTime - p.at;
 		return idleTime;
 	}
 }
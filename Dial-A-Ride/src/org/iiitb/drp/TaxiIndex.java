@@ -0,0 +1,147 @@
+package org.iiitb.drp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Index of where the taxis of a fleet are over the day. The day is cut into
+ * slots and, for every slot, the taxis are bucketed by the location they are
+ * at when the slot starts. Lets the taxis nearest to a stop at some time be
+ * found without looking at every taxi, and is updated one taxi at a time as
+ * routes change.
+ * 
+ * @author kempa
+ * 
+ */
+public class TaxiIndex
+{
+	private final ArrayList<Taxi> taxis;
+	private final int slotLength; // minutes
+	private final int[][] location; // location[i][slot] of the i'th taxi
+	// Indices of the taxis at each location, by slot
+	private final ArrayList<Map<Integer, TreeSet<Integer>>> buckets;
+
+	/**
+	 * Index a fleet
+	 * 
+	 * @param taxis The fleet. Taxis are identified by their position in it
+	 * @param slotLength Length of a time slot in minutes
+	 */
+	public TaxiIndex(ArrayList<Taxi> taxis, int slotLength)
+	{
+		this.taxis = taxis;
+		this.slotLength = slotLength;
+		int nSlots = (DialARide.dayEndTime - DialARide.dayStartTime)
+				/ slotLength + 1;
+		location = new int[taxis.size()][nSlots];
+		buckets = new ArrayList<Map<Integer, TreeSet<Integer>>>(nSlots);
+		for (int slot = 0; slot < nSlots; slot++)
+			buckets.add(new HashMap<Integer, TreeSet<Integer>>());
+
+		for (int i = 0; i < taxis.size(); i++)
+			for (int slot = 0; slot < nSlots; slot++)
+			{
+				location[i][slot] = taxis.get(i).stopAt(startOf(slot)).location;
+				bucket(slot, location[i][slot]).add(i);
+			}
+	}
+
+	private int startOf(int slot)
+	{
+		return DialARide.dayStartTime + slot * slotLength;
+	}
+
+	private int slotOf(int time)
+	{
+		int slot = (time - DialARide.dayStartTime) / slotLength;
+		return Math.max(0, Math.min(slot, buckets.size() - 1));
+	}
+
+	private TreeSet<Integer> bucket(int slot, int location)
+	{
+		TreeSet<Integer> taxis = buckets.get(slot).get(location);
+		if (taxis == null)
+		{
+			taxis = new TreeSet<Integer>();
+			buckets.get(slot).put(location, taxis);
+		}
+		return taxis;
+	}
+
+	/**
+	 * Re-index a taxi whose route changed from {@code time} onwards
+	 * 
+	 * @param i Position of the taxi in the fleet
+	 * @param time Earliest actual time of a stop that was added or moved
+	 */
+	public void update(int i, int time)
+	{
+		Taxi taxi = taxis.get(i);
+		for (int slot = slotOf(time); slot < buckets.size(); slot++)
+		{
+			int l = taxi.stopAt(startOf(slot)).location;
+			if (l == location[i][slot])
+				continue;
+			TreeSet<Integer> old = buckets.get(slot).get(location[i][slot]);
+			old.remove(i);
+			if (old.isEmpty())
+				buckets.get(slot).remove(location[i][slot]);
+			location[i][slot] = l;
+			bucket(slot, l).add(i);
+		}
+	}
+
+	/**
+	 * Find the taxis nearest to a stop at some time, by the distance from
+	 * where they are at the start of the time slot. Taxis at the same
+	 * distance are ordered by their position in the fleet.
+	 * 
+	 * This is a linear filter over the locations taxis are at in the slot : a
+	 * distance is looked up for each of them, but the taxis at a location
+	 * are only looked at if it is nearer than the k'th taxi found so far.
+	 * Stops carry no coordinates and distances need not be symmetric, so
+	 * there is no bound to stop the scan early by.
+	 * 
+	 * @param time The time
+	 * @param dest The stop
+	 * @param k Number of taxis wanted
+	 * @return Positions in the fleet of the k nearest taxis, nearest first
+	 */
+	public int[] nearest(int time, Stop dest, int k)
+	{
+		k = Math.min(k, taxis.size());
+		if (k <= 0)
+			return new int[0];
+
+		// Max-heap of (distance, taxi) keys of the nearest taxis found so far
+		PriorityQueue<Long> heap = new PriorityQueue<Long>(k + 1,
+				Collections.reverseOrder());
+		for (Map.Entry<Integer, TreeSet<Integer>> e : buckets.get(slotOf(time))
+				.entrySet())
+		{
+			long d = dest.distances.distance(e.getKey(), dest.location);
+			if (heap.size() == k && d > heap.peek() >>> 32)
+				continue; // All taxis at this location are farther
+			for (int i : e.getValue())
+			{
+				long key = d << 32 | i;
+				if (heap.size() == k)
+				{
+					if (key > heap.peek())
+						break; // So are the rest of the taxis here
+					heap.poll();
+				}
+				heap.add(key);
+			}
+		}
+
+		int[] nearest = new int[heap.size()];
+		for (int j = nearest.length - 1; j >= 0; j--)
+			nearest[j] = (int) (heap.poll() & 0xffffffffL);
+		return nearest;
+	}
+}
@@ -0,0 +1,322 @@
+package org.iiitb.graphs;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shortest-path distances of an {@link EdgeWeightedDigraph} found one pair of
+ * vertices at a time, for maps too large to precompute all of them. Each
+ * query searches forward from the source and backward from the destination
+ * at once, with A* guided by ALT (A*, Landmarks, Triangle inequality) lower
+ * bounds.
+ *
+ * The distances to and from a handful of landmarks, spread far apart, are
+ * computed once. By the triangle inequality, d(v, w) is at least
+ * d(v, L) - d(w, L) and d(L, w) - d(L, v) for every landmark L, so the
+ * searches head for each other and settle only a small part of the graph.
+ * Both searches use the average of their lower bounds as the potential,
+ * which keeps it consistent, and stop once their smallest keys add up to the
+ * shortest path found so far. The engine may be shared between threads,
+ * each querying it on a workspace of its own
+ */
+public class BidirectionalALT implements DistanceOracle
+{
+	private final CSRDigraph G;
+	private final CSRDigraph R; // G reversed
+	private final int[] landmarks;
+	private final int k; // Number of landmarks
+	// Of vertex v and the i'th landmark L at v * k + i. Integer.MAX_VALUE if
+	// there is no path
+	private final int[] fromLandmark; // d(L, v)
+	private final int[] toLandmark; // d(v, L)
+
+	private final ThreadLocal<Query> workspace; // Of each querying thread
+
+	private final LongAdder queries = new LongAdder();
+	private final LongAdder settled = new LongAdder(); // By all queries
+
+	/**
+	 * @param G The graph. Edge weights must not be negative
+	 * @param k Number of landmarks wanted. Fewer are picked if fewer vertices
+	 *            are reachable from the first one
+	 */
+	public BidirectionalALT(EdgeWeightedDigraph G, int k)
+	{
+		this(new CSRDigraph(G), k);
+	}
+
+	public BidirectionalALT(CSRDigraph G, int k)
+	{
+		if (k < 1)
+			throw new IllegalArgumentException("Number of landmarks : " + k);
+		int V = G.V();
+		this.G = G;
+		R = G.reverse();
+
+		// Landmarks are picked one at a time, each the vertex farthest from
+		// those picked so far, as ZonePartition picks its centres
+		int[][] from = new int[k][], to = new int[k][];
+		int[] picked = new int[k];
+		int[] nearest = new int[V];
+		int n = 0;
+		int landmark = farthest(distancesFrom(G, firstVertex(G)));
+		while (landmark >= 0)
+		{
+			picked[n] = landmark;
+			from[n] = distancesFrom(G, landmark);
+			to[n] = distancesFrom(R, landmark);
+			for (int v = 0; v < V; v++)
+				if (n == 0 || from[n][v] < nearest[v])
+					nearest[v] = from[n][v];
+			n++;
+			if (n == k)
+				break;
+			landmark = farthest(nearest);
+		}
+		this.k = n;
+		landmarks = Arrays.copyOf(picked, n);
+		fromLandmark = new int[V * n];
+		toLandmark = new int[V * n];
+		for (int v = 0; v < V; v++)
+			for (int i = 0; i < n; i++)
+			{
+				fromLandmark[v * n + i] = from[i][v];
+				toLandmark[v * n + i] = to[i][v];
+			}
+
+		workspace = new ThreadLocal<Query>()
+		{
+			@Override
+			protected Query initialValue()
+			{
+				return new Query();
+			}
+		};
+	}
+
+	// The first vertex with an edge leaving it. 0 if there is none
+	private static int firstVertex(CSRDigraph G)
+	{
+		for (int v = 0; v < G.V(); v++)
+			if (G.begin(v) < G.end(v))
+				return v;
+		return 0;
+	}
+
+	private static int[] distancesFrom(CSRDigraph G, int s)
+	{
+		SingleSourceSP sp = SingleSourceSP.workspace(G);
+		sp.search(s);
+		int[] dist = new int[G.V()];
+		for (int v = 0; v < dist.length; v++)
+			dist[v] = sp.distance(v);
+		return dist;
+	}
+
+	// The reachable vertex with the largest distance. -1 if that is 0
+	private static int farthest(int[] dist)
+	{
+		int far = -1;
+		for (int v = 0; v < dist.length; v++)
+			if (dist[v] != Integer.MAX_VALUE && dist[v] > 0
+					&& (far < 0 || dist[v] > dist[far]))
+				far = v;
+		return far;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see DistanceOracle#distance(int, int)
+	 */
+	@Override
+	public int distance(int v, int w)
+	{
+		if (v == w)
+			return 0;
+		queries.increment();
+		return workspace.get().distance(v, w);
+	}
+
+	/**
+	 * Workspace of the queries of a thread. A vertex has a distance or
+	 * potential only if its stamp is that of the query
+	 */
+	private class Query
+	{
+		// From the source by the forward search, and to the destination by the
+		// backward one
+		private final double[] distF = new double[G.V()],
+				distR = new double[G.V()];
+		// Forward potential. Infinite for vertices on no path of the query
+		private final double[] potential = new double[G.V()];
+		private final int[] seenF = new int[G.V()], seenR = new int[G.V()],
+				stamped = new int[G.V()];
+		private int stamp;
+		private final IndexMinPQ pqF = new IndexMinPQ(G.V()),
+				pqR = new IndexMinPQ(G.V());
+		private int s, t; // Of the query
+		private long nSettled; // By the query
+
+		int distance(int v, int w)
+		{
+			if (++stamp == Integer.MAX_VALUE)
+			{
+				Arrays.fill(seenF, 0);
+				Arrays.fill(seenR, 0);
+				Arrays.fill(stamped, 0);
+				stamp = 1;
+			}
+			s = v;
+			t = w;
+			nSettled = 0;
+			if (potential(s) == Double.POSITIVE_INFINITY)
+				return Integer.MAX_VALUE; // The bounds show there is no path
+
+			seenF[s] = stamp;
+			distF[s] = 0;
+			pqF.insert(s, potential(s));
+			seenR[t] = stamp;
+			distR[t] = 0;
+			pqR.insert(t, -potential(t));
+
+			// Length of the shortest path found so far
+			double best = Double.POSITIVE_INFINITY;
+			while (!pqF.isEmpty() && !pqR.isEmpty()
+					&& pqF.minKey() + pqR.minKey() < best)
+				if (pqF.minKey() <= pqR.minKey())
+					best = Math.min(best, scan(G, pqF, distF, seenF, distR,
+							seenR, 1));
+				else
+					best = Math.min(best, scan(R, pqR, distR, seenR, distF,
+							seenF, -1));
+			pqF.clear();
+			pqR.clear();
+			settled.add(nSettled);
+			return best == Double.POSITIVE_INFINITY ? Integer.MAX_VALUE
+					: (int) best;
+		}
+
+		// Settle the vertex with the smallest key of one search and relax its
+		// edges. The keys of the forward search are its distances plus the
+		// potential, those of the backward search its distances minus it
+		//
+		// Returns the length of the shortest path found through a vertex both
+		// searches have reached
+		private double scan(CSRDigraph G, IndexMinPQ pq, double[] dist,
+				int[] seen, double[] otherDist, int[] otherSeen, int sign)
+		{
+			nSettled++;
+			int v = pq.delMin();
+			double best = Double.POSITIVE_INFINITY;
+			for (int e = G.begin(v); e < G.end(v); e++)
+			{
+				int w = G.to(e);
+				double p = potential(w);
+				if (p == Double.POSITIVE_INFINITY)
+					continue; // w is on no path between s and t
+				double d = dist[v] + G.weight(e);
+				if (seen[w] != stamp)
+				{
+					seen[w] = stamp;
+					dist[w] = d;
+					pq.insert(w, d + sign * p);
+				}
+				else if (d < dist[w])
+				{
+					dist[w] = d;
+					if (pq.contains(w))
+						pq.decreaseKey(w, d + sign * p);
+					else
+						pq.insert(w, d + sign * p); // Only if the potential
+													// is not consistent
+				}
+				else
+					continue;
+				if (otherSeen[w] == stamp)
+					best = Math.min(best, d + otherDist[w]);
+			}
+			return best;
+		}
+
+		// The forward potential of v, half the difference of the lower bounds
+		// on d(v, t) and on d(s, v). Infinite if a bound shows v is on no path
+		// from s to t
+		private double potential(int v)
+		{
+			if (stamped[v] == stamp)
+				return potential[v];
+			stamped[v] = stamp;
+			double toT = bound(v, t), fromS = bound(s, v);
+			potential[v] = toT == Double.POSITIVE_INFINITY
+					|| fromS == Double.POSITIVE_INFINITY
+							? Double.POSITIVE_INFINITY : (toT - fromS) / 2;
+			return potential[v];
+		}
+	}
+
+	// Lower bound on d(v, w) by the triangle inequality over the landmarks.
+	// Terms whose distances are infinite bound nothing, unless they show w
+	// can't be reached from v
+	private double bound(int v, int w)
+	{
+		int b = 0;
+		for (int i = 0; i < k; i++)
+		{
+			// d(v, w) >= d(v, L) - d(w, L)
+			int vL = toLandmark[v * k + i], wL = toLandmark[w * k + i];
+			if (vL == Integer.MAX_VALUE && wL != Integer.MAX_VALUE)
+				return Double.POSITIVE_INFINITY;
+			if (wL != Integer.MAX_VALUE)
+				b = Math.max(b, vL - wL);
+
+			// d(v, w) >= d(L, w) - d(L, v)
+			int Lv = fromLandmark[v * k + i], Lw = fromLandmark[w * k + i];
+			if (Lw == Integer.MAX_VALUE && Lv != Integer.MAX_VALUE)
+				return Double.POSITIVE_INFINITY;
+			if (Lv != Integer.MAX_VALUE)
+				b = Math.max(b, Lw - Lv);
+		}
+		return b;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see DistanceOracle#V()
+	 */
+	@Override
+	public int V()
+	{
+		return G.V();
+	}
+
+	/**
+	 * @return The landmarks
+	 */
+	public int[] landmarks()
+	{
+		return landmarks.clone();
+	}
+
+	public long queries()
+	{
+		return queries.sum();
+	}
+
+	/**
+	 * @return Number of vertices settled by all queries so far
+	 */
+	public long settled()
+	{
+		return settled.sum();
+	}
+
+	public String toString()
+	{
+		long queries = queries(), settled = settled();
+		return "ALT : " + k + " landmarks, " + queries + " queries, "
+				+ (queries == 0 ? 0 : settled / queries) + " of " + G.V()
+				+ " vertices settled a query";
+	}
+}
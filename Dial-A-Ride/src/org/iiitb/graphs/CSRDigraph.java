@@ -0,0 +1,214 @@
+package org.iiitb.graphs;
+
+import java.util.Arrays;
+
+/**
+ * An immutable compressed sparse row(CSR) representation of an
+ * {@link EdgeWeightedDigraph}. The edges leaving v are numbered
+ * begin(v)..end(v) - 1 and their heads and weights are held in primitive
+ * arrays, so traversals allocate nothing and read memory sequentially.
+ * 
+ * <pre>
+ * for (int e = G.begin(v); e &lt; G.end(v); e++)
+ * 	visit(G.to(e), G.weight(e));
+ * </pre>
+ */
+public class CSRDigraph
+{
+	private final int V;
+	private final int[] offset; // Edges of v are offset[v]..offset[v + 1] - 1
+	private final int[] to; // Head of each edge
+	private final double[] weight; // Weight of each edge
+	private final boolean integral; // Are all weights whole and not negative?
+	private final double maxWeight; // 0 without edges
+
+	/**
+	 * Construct the CSR form of {@code G}. The edges of each vertex keep
+	 * their order in the adjacency list of {@code G}
+	 * 
+	 * @param G The graph
+	 */
+	public CSRDigraph(EdgeWeightedDigraph G)
+	{
+		V = G.V();
+		offset = new int[V + 1];
+		to = new int[G.E()];
+		weight = new double[G.E()];
+
+		int e = 0;
+		for (int v = 0; v < V; v++)
+		{
+			offset[v] = e;
+			for (DirectedEdge d : G.adj(v))
+			{
+				to[e] = d.to();
+				weight[e] = d.weight();
+				e++;
+			}
+		}
+		offset[V] = e;
+		integral = integral(weight);
+		maxWeight = max(weight);
+	}
+
+	// Over arrays already in CSR form, which are taken over
+	CSRDigraph(int V, int[] offset, int[] to, double[] weight)
+	{
+		this.V = V;
+		this.offset = offset;
+		this.to = to;
+		this.weight = weight;
+		integral = integral(weight);
+		maxWeight = max(weight);
+	}
+
+	private static boolean integral(double[] weight)
+	{
+		for (double w : weight)
+			if (w < 0 || w != Math.rint(w) || w > Integer.MAX_VALUE)
+				return false;
+		return true;
+	}
+
+	private static double max(double[] weight)
+	{
+		double max = 0;
+		for (double w : weight)
+			max = Math.max(max, w);
+		return max;
+	}
+
+	/**
+	 * Construct the graph with the direction of every edge reversed. The
+	 * edges entering each vertex are numbered in the order of their tails
+	 * 
+	 * @return The reverse graph
+	 */
+	public CSRDigraph reverse()
+	{
+		int[] offset = new int[V + 1];
+		for (int e = 0; e < to.length; e++)
+			offset[to[e] + 1]++;
+		for (int v = 0; v < V; v++)
+			offset[v + 1] += offset[v];
+
+		int[] next = Arrays.copyOf(offset, V); // Next free edge of each vertex
+		int[] from = new int[to.length];
+		double[] weight = new double[to.length];
+		for (int v = 0; v < V; v++)
+			for (int e = begin(v); e < end(v); e++)
+			{
+				int r = next[to[e]]++;
+				from[r] = v;
+				weight[r] = this.weight[e];
+			}
+		return new CSRDigraph(V, offset, from, weight);
+	}
+
+	public int V()
+	{
+		return V;
+	}
+
+	public int E()
+	{
+		return to.length;
+	}
+
+	/**
+	 * @param v The vertex
+	 * @return Number of the first edge leaving v
+	 */
+	public int begin(int v)
+	{
+		return offset[v];
+	}
+
+	/**
+	 * @param v The vertex
+	 * @return One past the number of the last edge leaving v
+	 */
+	public int end(int v)
+	{
+		return offset[v + 1];
+	}
+
+	/**
+	 * @param e Number of the edge
+	 * @return The vertex edge e points to
+	 */
+	public int to(int e)
+	{
+		return to[e];
+	}
+
+	/**
+	 * @return Are all weights whole numbers, not negative and no greater than
+	 *         Integer.MAX_VALUE? Shortest paths can then be found by
+	 *         {@link DialSP}
+	 */
+	public boolean integral()
+	{
+		return integral;
+	}
+
+	/**
+	 * @return The largest edge weight. 0 if there are no edges
+	 */
+	public double maxWeight()
+	{
+		return maxWeight;
+	}
+
+	/**
+	 * @param e Number of the edge
+	 * @return Weight of edge e
+	 */
+	public double weight(int e)
+	{
+		return weight[e];
+	}
+
+	/**
+	 * Determine the tail of an edge. Takes O(log V) as tails are not stored
+	 * 
+	 * @param e Number of the edge
+	 * @return The vertex edge e leaves
+	 */
+	public int from(int e)
+	{
+		int lo = 0, hi = V - 1;
+		while (lo < hi)
+		{
+			int mid = (lo + hi + 1) >>> 1;
+			if (offset[mid] <= e)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * @param e Number of the edge
+	 * @return Edge e as a {@link DirectedEdge}
+	 */
+	public DirectedEdge edge(int e)
+	{
+		return new DirectedEdge(from(e), to[e], weight[e]);
+	}
+
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append(V).append(" vertices ").append(E()).append(" edges\n");
+		for (int v = 0; v < V; v++)
+		{
+			s.append(v).append(": ");
+			for (int e = begin(v); e < end(v); e++)
+				s.append(edge(e)).append(", ");
+			s.append("\n");
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,448 @@
+package org.iiitb.graphs;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shortest-path distances of an {@link EdgeWeightedDigraph} by contraction
+ * hierarchies, for maps too large for a {@link DistanceMatrix} that are
+ * queried too often for a search of the map each time.
+ *
+ * Preprocessing ranks the vertices and contracts them in that order. A vertex
+ * is contracted by removing it and adding a shortcut u-x for every pair of
+ * its neighbours whose only shortest path u-v-x goes through it, as far as a
+ * bounded witness search can tell. Vertices are ranked lazily by twice the
+ * number of shortcuts their contraction adds less the edges it removes, plus
+ * the number of their neighbours already contracted, so that contraction is
+ * spread over the map.
+ *
+ * Every shortest path then has a version that only goes up in rank and then
+ * only down, so a query searches upwards from the source and, on the
+ * reversed edges, upwards from the destination, settling a few hundred
+ * vertices at most. The hierarchy may be shared between threads, each
+ * querying it on a workspace of its own
+ */
+public class ContractionHierarchy implements DistanceOracle
+{
+	/**
+	 * Vertices settled by a witness search before it gives up, unless told
+	 * otherwise. A shortcut is added when no witness is found in time, which
+	 * costs some query time but never a wrong distance
+	 */
+	public static final int WITNESS_LIMIT = 500;
+
+	private final int V;
+	private final CSRDigraph up; // Edges to higher ranked vertices
+	private final CSRDigraph down; // Edges from higher ranked vertices,
+									// reversed
+	private final int[] rank; // Order of contraction of each vertex
+	private final int nShortcuts;
+
+	private final ThreadLocal<Query> workspace; // Of each querying thread
+
+	private final LongAdder queries = new LongAdder();
+	private final LongAdder settled = new LongAdder(); // By all queries
+
+	/**
+	 * Preprocess a graph
+	 *
+	 * @param G The graph. Edge weights must not be negative
+	 */
+	public ContractionHierarchy(EdgeWeightedDigraph G)
+	{
+		this(new CSRDigraph(G), WITNESS_LIMIT);
+	}
+
+	/**
+	 * Preprocess a graph
+	 *
+	 * @param G The graph. Edge weights must not be negative
+	 * @param witnessLimit Vertices settled by a witness search before it
+	 *            gives up. Higher limits take longer to preprocess and add
+	 *            fewer shortcuts
+	 */
+	public ContractionHierarchy(CSRDigraph G, int witnessLimit)
+	{
+		if (witnessLimit < 1)
+			throw new IllegalArgumentException("Witness limit : "
+					+ witnessLimit);
+		V = G.V();
+		Contractor c = new Contractor(G, witnessLimit);
+		c.contractAll();
+		up = new CSRDigraph(c.up);
+		down = new CSRDigraph(c.down);
+		rank = c.rank;
+		nShortcuts = c.nShortcuts;
+		workspace = new ThreadLocal<Query>()
+		{
+			@Override
+			protected Query initialValue()
+			{
+				return new Query();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see DistanceOracle#distance(int, int)
+	 */
+	@Override
+	public int distance(int v, int w)
+	{
+		if (v == w)
+			return 0;
+		queries.increment();
+		return workspace.get().distance(v, w);
+	}
+
+	/**
+	 * Workspace of the queries of a thread. A vertex has a distance only if
+	 * its stamp is that of the query
+	 */
+	private class Query
+	{
+		// From the source by the upward search, and to the destination by the
+		// downward one
+		private final double[] distF = new double[V], distR = new double[V];
+		private final int[] seenF = new int[V], seenR = new int[V];
+		private int stamp;
+		private final IndexMinPQ pqF = new IndexMinPQ(V),
+				pqR = new IndexMinPQ(V);
+		private long nSettled; // By the current query
+
+		int distance(int v, int w)
+		{
+			nSettled = 0;
+			if (++stamp == Integer.MAX_VALUE)
+			{
+				Arrays.fill(seenF, 0);
+				Arrays.fill(seenR, 0);
+				stamp = 1;
+			}
+			seenF[v] = stamp;
+			distF[v] = 0;
+			pqF.insert(v, 0);
+			seenR[w] = stamp;
+			distR[w] = 0;
+			pqR.insert(w, 0);
+
+			// Length of the shortest path found so far. A search stops once its
+			// nearest vertex is no nearer
+			double best = Double.POSITIVE_INFINITY;
+			while (true)
+			{
+				boolean forward = !pqF.isEmpty() && pqF.minKey() < best;
+				boolean backward = !pqR.isEmpty() && pqR.minKey() < best;
+				if (!forward && !backward)
+					break;
+				if (forward && (!backward || pqF.minKey() <= pqR.minKey()))
+					best = Math.min(best, scan(up, pqF, distF, seenF, distR,
+							seenR));
+				else
+					best = Math.min(best, scan(down, pqR, distR, seenR, distF,
+							seenF));
+			}
+			pqF.clear();
+			pqR.clear();
+			settled.add(nSettled);
+			return best == Double.POSITIVE_INFINITY ? Integer.MAX_VALUE
+					: (int) best;
+		}
+
+		// Settle the nearest vertex of one search and relax its edges. Returns
+		// the length of the shortest path found through a vertex both searches
+		// have reached
+		private double scan(CSRDigraph G, IndexMinPQ pq, double[] dist,
+				int[] seen, double[] otherDist, int[] otherSeen)
+		{
+			nSettled++;
+			int v = pq.delMin();
+			double best = otherSeen[v] == stamp ? dist[v] + otherDist[v]
+					: Double.POSITIVE_INFINITY;
+			for (int e = G.begin(v); e < G.end(v); e++)
+			{
+				int w = G.to(e);
+				double d = dist[v] + G.weight(e);
+				if (seen[w] != stamp)
+				{
+					seen[w] = stamp;
+					dist[w] = d;
+					pq.insert(w, d);
+				}
+				else if (d < dist[w])
+				{
+					dist[w] = d;
+					pq.decreaseKey(w, d);
+				}
+				else
+					continue;
+				if (otherSeen[w] == stamp)
+					best = Math.min(best, d + otherDist[w]);
+			}
+			return best;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see DistanceOracle#V()
+	 */
+	@Override
+	public int V()
+	{
+		return V;
+	}
+
+	/**
+	 * @param v A vertex
+	 * @return Position of v in the order of contraction, from 0 to V - 1
+	 */
+	public int rank(int v)
+	{
+		return rank[v];
+	}
+
+	/**
+	 * @return Number of shortcuts added by preprocessing
+	 */
+	public int shortcuts()
+	{
+		return nShortcuts;
+	}
+
+	public long queries()
+	{
+		return queries.sum();
+	}
+
+	/**
+	 * @return Number of vertices settled by all queries so far
+	 */
+	public long settled()
+	{
+		return settled.sum();
+	}
+
+	public String toString()
+	{
+		long queries = queries(), settled = settled();
+		return "Contraction hierarchy : " + nShortcuts + " shortcuts, "
+				+ queries + " queries, "
+				+ (queries == 0 ? 0 : settled / queries) + " of " + V
+				+ " vertices settled a query";
+	}
+
+	/**
+	 * The graph being contracted, with the workspace of the witness searches.
+	 * Edges to and from contracted vertices are left in the lists and
+	 * skipped
+	 */
+	private static class Contractor
+	{
+		private final int V;
+		private final int witnessLimit;
+		private final int[][] outTo, inFrom;
+		private final double[][] outWeight, inWeight;
+		private final int[] outDegree, inDegree;
+		private final boolean[] contracted;
+		private final int[] contractedNeighbours;
+
+		private final double[] dist; // Of the witness search
+		private final int[] seen;
+		private int stamp;
+		private final IndexMinPQ pq;
+
+		final EdgeWeightedDigraph up, down;
+		final int[] rank;
+		int nShortcuts;
+
+		Contractor(CSRDigraph G, int witnessLimit)
+		{
+			V = G.V();
+			this.witnessLimit = witnessLimit;
+			outTo = new int[V][];
+			inFrom = new int[V][];
+			outWeight = new double[V][];
+			inWeight = new double[V][];
+			outDegree = new int[V];
+			inDegree = new int[V];
+			for (int v = 0; v < V; v++)
+			{
+				outTo[v] = new int[4];
+				inFrom[v] = new int[4];
+				outWeight[v] = new double[4];
+				inWeight[v] = new double[4];
+			}
+			for (int v = 0; v < V; v++)
+				for (int e = G.begin(v); e < G.end(v); e++)
+					if (G.to(e) != v)
+						addEdge(v, G.to(e), G.weight(e));
+			contracted = new boolean[V];
+			contractedNeighbours = new int[V];
+
+			dist = new double[V];
+			seen = new int[V];
+			pq = new IndexMinPQ(V);
+
+			up = new EdgeWeightedDigraph(V);
+			down = new EdgeWeightedDigraph(V);
+			rank = new int[V];
+		}
+
+		// Contract every vertex, the one whose priority is lowest first.
+		// Priorities only change when neighbours are contracted, so they are
+		// worked out again only when a vertex comes up for contraction
+		void contractAll()
+		{
+			IndexMinPQ order = new IndexMinPQ(V);
+			for (int v = 0; v < V; v++)
+				order.insert(v, priority(v));
+			int next = 0;
+			while (!order.isEmpty())
+			{
+				int v = order.delMin();
+				double p = priority(v);
+				if (!order.isEmpty() && p > order.minKey())
+				{
+					order.insert(v, p);
+					continue;
+				}
+
+				for (int i = 0; i < outDegree[v]; i++)
+					if (!contracted[outTo[v][i]])
+					{
+						up.addEdge(new DirectedEdge(v, outTo[v][i],
+								outWeight[v][i]));
+						contractedNeighbours[outTo[v][i]]++;
+					}
+				for (int i = 0; i < inDegree[v]; i++)
+					if (!contracted[inFrom[v][i]])
+					{
+						down.addEdge(new DirectedEdge(v, inFrom[v][i],
+								inWeight[v][i]));
+						contractedNeighbours[inFrom[v][i]]++;
+					}
+				nShortcuts += contract(v, false);
+				contracted[v] = true;
+				rank[v] = next++;
+			}
+		}
+
+		// Twice the shortcuts the contraction of v would add less the edges it
+		// would remove, plus the neighbours of v already contracted
+		private double priority(int v)
+		{
+			int removed = 0;
+			for (int i = 0; i < outDegree[v]; i++)
+				if (!contracted[outTo[v][i]])
+					removed++;
+			for (int i = 0; i < inDegree[v]; i++)
+				if (!contracted[inFrom[v][i]])
+					removed++;
+			return 2 * (contract(v, true) - removed) + contractedNeighbours[v];
+		}
+
+		// Add the shortcuts needed to remove v, or only count them if
+		// simulating. Returns their number
+		private int contract(int v, boolean simulate)
+		{
+			int added = 0;
+			for (int i = 0; i < inDegree[v]; i++)
+			{
+				int u = inFrom[v][i];
+				if (contracted[u])
+					continue;
+				double longest = -1; // Of the paths u-v-x
+				for (int j = 0; j < outDegree[v]; j++)
+					if (!contracted[outTo[v][j]] && outTo[v][j] != u)
+						longest = Math.max(longest, inWeight[v][i]
+								+ outWeight[v][j]);
+				if (longest < 0)
+					continue;
+				witnessSearch(u, v, longest);
+				for (int j = 0; j < outDegree[v]; j++)
+				{
+					int x = outTo[v][j];
+					if (contracted[x] || x == u)
+						continue;
+					double via = inWeight[v][i] + outWeight[v][j];
+					if (seen[x] != stamp || dist[x] > via)
+					{
+						added++;
+						if (!simulate)
+							addEdge(u, x, via);
+					}
+				}
+			}
+			return added;
+		}
+
+		// Shortest paths from u avoiding v and contracted vertices, up to a
+		// length of limit or witnessLimit vertices settled
+		private void witnessSearch(int u, int v, double limit)
+		{
+			stamp++;
+			seen[u] = stamp;
+			dist[u] = 0;
+			pq.insert(u, 0);
+			for (int n = 0; !pq.isEmpty() && pq.minKey() <= limit
+					&& n < witnessLimit; n++)
+			{
+				int w = pq.delMin();
+				for (int i = 0; i < outDegree[w]; i++)
+				{
+					int x = outTo[w][i];
+					if (x == v || contracted[x])
+						continue;
+					double d = dist[w] + outWeight[w][i];
+					if (seen[x] != stamp)
+					{
+						seen[x] = stamp;
+						dist[x] = d;
+						pq.insert(x, d);
+					}
+					else if (d < dist[x] && pq.contains(x))
+					{
+						dist[x] = d;
+						pq.decreaseKey(x, d);
+					}
+				}
+			}
+			pq.clear();
+		}
+
+		// Add an edge u-x, or lower the weight of the one there is
+		private void addEdge(int u, int x, double weight)
+		{
+			for (int i = 0; i < outDegree[u]; i++)
+				if (outTo[u][i] == x)
+				{
+					if (weight < outWeight[u][i])
+					{
+						outWeight[u][i] = weight;
+						for (int j = 0; j < inDegree[x]; j++)
+							if (inFrom[x][j] == u)
+								inWeight[x][j] = weight;
+					}
+					return;
+				}
+			if (outDegree[u] == outTo[u].length)
+			{
+				outTo[u] = Arrays.copyOf(outTo[u], 2 * outDegree[u]);
+				outWeight[u] = Arrays.copyOf(outWeight[u], 2 * outDegree[u]);
+			}
+			outTo[u][outDegree[u]] = x;
+			outWeight[u][outDegree[u]++] = weight;
+			if (inDegree[x] == inFrom[x].length)
+			{
+				inFrom[x] = Arrays.copyOf(inFrom[x], 2 * inDegree[x]);
+				inWeight[x] = Arrays.copyOf(inWeight[x], 2 * inDegree[x]);
+			}
+			inFrom[x][inDegree[x]] = u;
+			inWeight[x][inDegree[x]++] = weight;
+		}
+	}
+}
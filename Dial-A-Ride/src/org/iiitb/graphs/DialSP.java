@@ -0,0 +1,157 @@
+package org.iiitb.graphs;
+
+import java.util.Arrays;
+
+/**
+ * Shortest paths from a source for graphs whose weights are small
+ * non-negative integers, by Dial's algorithm. Tentative distances are kept in
+ * a circular array of buckets, one per distance modulo the largest weight
+ * plus one, each a doubly linked list threaded through vertex indexed arrays.
+ * Vertices are settled by scanning the buckets in order, so a search costs
+ * O(E + V + D) for a largest distance D, with no comparisons and no objects
+ * allocated.
+ */
+public class DialSP implements SingleSourceSP
+{
+	/**
+	 * Largest edge weight handled. Beyond it the buckets take more memory and
+	 * time to scan than a heap would
+	 */
+	public static final int MAX_WEIGHT = 1 << 16;
+
+	private final CSRDigraph G;
+	private final int[] weight; // Of each edge of G
+	private final int[] dist; // From the source. MAX_VALUE if unreached
+	private final int[] edgeTo; // Last edge of the shortest path to each
+								// vertex. -1 for the source and unreached
+								// vertices
+	private final int[] bucket; // First vertex of each bucket, -1 if empty
+	private final int[] next, prev; // Of a vertex in its bucket. -1 at the
+									// ends
+
+	/**
+	 * Compute the shortest paths of G from s
+	 * 
+	 * @param G The graph. Must be accepted by {@link #accepts}
+	 * @param s The source
+	 */
+	public DialSP(CSRDigraph G, int s)
+	{
+		this(G);
+		search(s);
+	}
+
+	// A workspace to be reused across sources through search()
+	DialSP(CSRDigraph G)
+	{
+		if (!accepts(G))
+			throw new IllegalArgumentException(
+					"Edge weights are not integers from 0 to " + MAX_WEIGHT
+							+ " or paths may be longer than an int");
+		this.G = G;
+		weight = new int[G.E()];
+		int max = 0;
+		for (int e = 0; e < weight.length; e++)
+		{
+			weight[e] = (int) G.weight(e);
+			max = Math.max(max, weight[e]);
+		}
+		dist = new int[G.V()];
+		edgeTo = new int[G.V()];
+		bucket = new int[max + 1];
+		next = new int[G.V()];
+		prev = new int[G.V()];
+	}
+
+	/**
+	 * @param G A graph
+	 * @return Are all weights of G integers from 0 to MAX_WEIGHT, and short
+	 *         enough that no path of V - 1 edges overflows an int?
+	 */
+	public static boolean accepts(CSRDigraph G)
+	{
+		return G.integral() && G.maxWeight() <= MAX_WEIGHT
+				&& (G.V() - 1L) * (long) G.maxWeight() <= Integer.MAX_VALUE - 1;
+	}
+
+	@Override
+	public void search(int s)
+	{
+		DijkstraSP.searches.increment();
+		Arrays.fill(dist, Integer.MAX_VALUE);
+		Arrays.fill(edgeTo, -1);
+		Arrays.fill(bucket, -1);
+
+		dist[s] = 0;
+		insert(s);
+		int queued = 1;
+		// Every queued vertex is at most the largest weight farther than d,
+		// so the buckets ahead of d hold one distance each
+		for (int d = 0; queued > 0; d++)
+		{
+			int b = d % bucket.length;
+			while (bucket[b] != -1)
+			{
+				int v = bucket[b];
+				remove(v);
+				queued--;
+				for (int e = G.begin(v); e < G.end(v); e++)
+				{
+					int w = G.to(e);
+					int dw = d + weight[e];
+					if (dw >= dist[w])
+						continue;
+					if (dist[w] == Integer.MAX_VALUE)
+						queued++;
+					else
+						remove(w);
+					dist[w] = dw;
+					edgeTo[w] = e;
+					insert(w); // Into bucket b again for a weight of 0
+				}
+			}
+		}
+	}
+
+	// Put v at the head of the bucket of its distance
+	private void insert(int v)
+	{
+		int b = dist[v] % bucket.length;
+		prev[v] = -1;
+		next[v] = bucket[b];
+		if (bucket[b] != -1)
+			prev[bucket[b]] = v;
+		bucket[b] = v;
+	}
+
+	private void remove(int v)
+	{
+		if (prev[v] != -1)
+			next[prev[v]] = next[v];
+		else
+			bucket[dist[v] % bucket.length] = next[v];
+		if (next[v] != -1)
+			prev[next[v]] = prev[v];
+	}
+
+	@Override
+	public int distance(int v)
+	{
+		return dist[v];
+	}
+
+	public boolean hasPathTo(int v)
+	{
+		return dist[v] != Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @param v A vertex
+	 * @return Last edge of the shortest path to v. -1 for the source and
+	 *         vertices without a path
+	 */
+	public int edgeTo(int v)
+	{
+		return edgeTo[v];
+	}
+}
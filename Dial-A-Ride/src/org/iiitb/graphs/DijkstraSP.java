@@ -1,33 +1,62 @@
 package org.iiitb.graphs;
 
 import java.util.LinkedList;
-import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 // Finds the shortest paths from all vertices of G to s
 // The union of all shortest paths forms the SPT, a spanning tree
 // The SPT contains all vertices of G and is hence represented in two vertex indexed data structures, distFromSource[] and edgeFromSPT[]
 // That a vertex is a part of the SPT is indicated by its distance to the source not being infinity
 
-public class DijkstraSP
+public class DijkstraSP implements SingleSourceSP
 {
-	private SPVertex vertex[];
-	private PriorityQueue<SPVertex> pq; // Shortest distances of vertices adjacent
-										// to
-										// the still-constructing SPT
+	// SPTs computed, also by DialSP
+	static final LongAdder searches = new LongAdder();
+
+	private double distFromSource[]; // shortest distance of a vertex to the
+										// source
+	private int edgeFromSPT[]; // Edge connecting a vertex to the SPT. -1 for
+								// the source and unreachable vertices
+	private CSRDigraph G;
+	private IndexMinPQ pq; // Shortest distances of vertices adjacent to the
+							// still-constructing SPT
 
 	public DijkstraSP(EdgeWeightedDigraph G, int s)
 	{
-		vertex = new SPVertex[G.V()];
-		for (int v = 0; v < G.V(); v++)
-			vertex[v] = new SPVertex(v, Double.POSITIVE_INFINITY);
+		this(new CSRDigraph(G), s);
+	}
+
+	public DijkstraSP(CSRDigraph G, int s)
+	{
+		this(G);
+		search(s);
+	}
+
+	// A workspace to be reused across sources through search()
+	DijkstraSP(CSRDigraph G)
+	{
+		this.G = G;
+		distFromSource = new double[G.V()];
+		edgeFromSPT = new int[G.V()];
+		pq = new IndexMinPQ(G.V());
+	}
 
-		pq = new PriorityQueue<>(G.V());
+	// Discard the SPT computed so far and compute the one rooted at s
+	@Override
+	public void search(int s)
+	{
+		searches.increment();
+		for (int v = 0; v < G.V(); v++)
+		{
+			distFromSource[v] = Double.POSITIVE_INFINITY;
+			edgeFromSPT[v] = -1;
+		}
 
 		// SPT construction starts at s
 		// That being the case, the only candidate for inclusion into SPT is
 		// this start vertex itself. So insert it into the PQ
-		vertex[s].distFromSource = 0.0;
-		pq.add(vertex[s]);
+		distFromSource[s] = 0.0;
+		pq.insert(s, distFromSource[s]);
 
 		// The construction of the SPT is complete only when all vertices of G
 		// are included in the SPT, i.e., the PQ is empty
@@ -35,27 +64,26 @@ public class DijkstraSP
 		{
 			// the vertex with the smallest distance from the source should
 			// become a part of the SPT. Get that vertex.
-			SPVertex v = pq.remove();
+			int v = pq.delMin();
 
 			// Now that v is a part of the SPT,
 			// 1. The smallest distance of adjacent vertices of v to the source
 			// may reduce. Check and update
 			// 2. Some vertices from among those adjacent to v may become
 			// adjacent to the SPT. Need to insert those into the PQ
-			update(G, v);
+			update(v);
 		}
-
 	}
 
 	// Update the shortest-distances-to-source of vertices adjacent to v
 	// Insert newly adjacent-to-MST vertices into the PQ
-	private void update(EdgeWeightedDigraph G, SPVertex v)
+	private void update(int v)
 	{
 		// for all adjacent vertices of v
-		for (DirectedEdge e : G.adj(v.name))
+		for (int e = G.begin(v); e < G.end(v); e++)
 		{
-			SPVertex w = vertex[e.to()]; // adjacent vertex of v
-			if (w.distFromSource > v.distFromSource + e.weight())
+			int w = G.to(e); // adjacent vertex of v
+			if (distFromSource[w] > distFromSource[v] + G.weight(e))
 			{
 				// Note: distFromSource[w] will not be greater than
 				// (distFromSource[v] + e.weight()) if w is already a part of
@@ -65,34 +93,44 @@ public class DijkstraSP
 				// not a prt of the SPT
 
 				// Shortest path to w is through v
-				w.distFromSource = v.distFromSource + e.weight();
-				w.edgeFromSPT = e;
+				distFromSource[w] = distFromSource[v] + G.weight(e);
+				edgeFromSPT[w] = e;
 
 				// w adjacent to the SPT vertex v is also adjacent to the SPT
 				// Therefore insert it into the PQ.
 				// If it is already there as a result of being an adjacent
-				// vertex to another SPT-vertex, update its distance to the
-				// source
+				// vertex to another SPT-vertex, decrease its distance to the
+				// source in place
 				if (!pq.contains(w))
-					pq.add(w);
+					pq.insert(w, distFromSource[w]);
 				else
-				{
-					// Reflecting the changed value of w.distFromSource
-					pq.remove(w);
-					pq.add(w);
-				}
+					pq.decreaseKey(w, distFromSource[w]);
 			}
 		}
 	}
 
+	/**
+	 * @return Number of shortest path trees computed in this process
+	 */
+	public static long searches()
+	{
+		return searches.sum();
+	}
+
 	public double distTo(int v)
 	{
-		return vertex[v].distFromSource;
+		return distFromSource[v];
+	}
+
+	@Override
+	public int distance(int v)
+	{
+		return (int) distFromSource[v];
 	}
 
 	public boolean hasPathTo(int v)
 	{
-		return vertex[v].distFromSource != Double.POSITIVE_INFINITY;
+		return distFromSource[v] != Double.POSITIVE_INFINITY;
 	}
 
 	public Iterable<DirectedEdge> pathTo(int v)
@@ -100,40 +138,13 @@ public class DijkstraSP
 		if (!hasPathTo(v))
 			return null;
 		LinkedList<DirectedEdge> stack = new LinkedList<DirectedEdge>();
-		for (DirectedEdge e = vertex[v].edgeFromSPT; e != null; e = vertex[e
-				.from()].edgeFromSPT)
-			stack.addFirst(e);
+		for (int e = edgeFromSPT[v]; e != -1; e = edgeFromSPT[v])
+		{
+			DirectedEdge d = G.edge(e);
+			stack.addFirst(d);
+			v = d.from();
+		}
 		return stack;
 	}
 
 }
-
-class SPVertex implements Comparable<SPVertex>
-{
-	int name;
-	double distFromSource;// shortest distance of a vertex to the
-	// source
-	DirectedEdge edgeFromSPT; // Edge connecting the vertex to the SPT
-
-	public SPVertex(int name, double distFromSource)
-	{
-		this.name = name;
-		this.distFromSource = distFromSource;
-		edgeFromSPT = null;
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see java.lang.Comparable#compareTo(java.lang.Object)
-	 */
-	@Override
-	public int compareTo(SPVertex o)
-	{
-		if (distFromSource > o.distFromSource)
-			return 1;
-		else if (distFromSource < o.distFromSource)
-			return -1;
-		return 0;
-	}
-}
\ No newline at end of file
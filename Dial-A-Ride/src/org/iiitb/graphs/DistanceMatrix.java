@@ -0,0 +1,155 @@
+package org.iiitb.graphs;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * All-pairs shortest-path distances of an {@link EdgeWeightedDigraph} held as
+ * a dense, row-major matrix of ints. Built once per graph so that a distance
+ * lookup is a single array read instead of a shortest-path tree per query
+ * source. The shortest-path trees of different sources are independent and
+ * are computed in parallel, by {@link DialSP} when the weights are small
+ * integers
+ */
+public class DistanceMatrix implements DistanceOracle
+{
+	// Largest array the JVM allocates. Keeps v * V + w within an int too
+	private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	private final int V;
+	private final int[] dist; // dist[v * V + w] is the distance from v to w
+
+	/**
+	 * Compute the distances between all pairs of vertices of {@code G} using
+	 * all available processors
+	 * 
+	 * @param G The graph
+	 */
+	public DistanceMatrix(EdgeWeightedDigraph G)
+	{
+		this(G, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Compute the distances between all pairs of vertices of {@code G}
+	 * 
+	 * @param G The graph
+	 * @param nThreads Number of threads computing shortest-path trees
+	 */
+	public DistanceMatrix(EdgeWeightedDigraph G, int nThreads)
+	{
+		this(new CSRDigraph(G), nThreads);
+	}
+
+	/**
+	 * Compute the distances between all pairs of vertices of {@code G}
+	 * 
+	 * @param G The graph
+	 * @param nThreads Number of threads computing shortest-path trees
+	 */
+	public DistanceMatrix(final CSRDigraph G, int nThreads)
+	{
+		if (nThreads < 1)
+			throw new IllegalArgumentException("Invalid number of threads : "
+					+ nThreads);
+		V = G.V();
+		if ((long) V * V > MAX_SIZE)
+			throw new IllegalArgumentException("A graph of " + V
+					+ " vertices is too large for a distance matrix. Find"
+					+ " distances on demand instead, with -cache, -alt or -ch");
+		dist = new int[V * V];
+
+		if (nThreads == 1)
+		{
+			new Rows(G, 0, V, null).compute();
+			return;
+		}
+
+		// One shortest path workspace per worker thread, reused for every
+		// source the worker is handed
+		ThreadLocal<SingleSourceSP> workspace;
+		workspace = new ThreadLocal<SingleSourceSP>()
+		{
+			@Override
+			protected SingleSourceSP initialValue()
+			{
+				return SingleSourceSP.workspace(G);
+			}
+		};
+		ForkJoinPool pool = new ForkJoinPool(nThreads);
+		try
+		{
+			pool.invoke(new Rows(G, 0, V, workspace));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Fills in the rows of sources lo..hi - 1, splitting the range among
+	 * workers until it is small enough
+	 */
+	@SuppressWarnings("serial")
+	private class Rows extends RecursiveAction
+	{
+		private static final int THRESHOLD = 16; // Sources per task
+
+		private final CSRDigraph G;
+		private final int lo, hi;
+		private final ThreadLocal<SingleSourceSP> workspace;
+
+		Rows(CSRDigraph G, int lo, int hi,
+				ThreadLocal<SingleSourceSP> workspace)
+		{
+			this.G = G;
+			this.lo = lo;
+			this.hi = hi;
+			this.workspace = workspace;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (workspace != null && hi - lo > THRESHOLD)
+			{
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Rows(G, lo, mid, workspace), new Rows(G, mid,
+						hi, workspace));
+				return;
+			}
+
+			SingleSourceSP sp = workspace == null ? SingleSourceSP
+					.workspace(G) : workspace.get();
+			for (int v = lo; v < hi; v++)
+			{
+				sp.search(v);
+				for (int w = 0; w < V; w++)
+					dist[v * V + w] = sp.distance(w);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see DistanceOracle#distance(int, int)
+	 */
+	@Override
+	public int distance(int v, int w)
+	{
+		return dist[v * V + w];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see DistanceOracle#V()
+	 */
+	@Override
+	public int V()
+	{
+		return V;
+	}
+}
@@ -0,0 +1,25 @@
+package org.iiitb.graphs;
+
+/**
+ * Answers shortest-path distance queries between vertices of an
+ * {@link EdgeWeightedDigraph}
+ */
+public interface DistanceOracle
+{
+	/**
+	 * Determine the length of the shortest path from v to w
+	 * 
+	 * @param v Source vertex
+	 * @param w Destination vertex
+	 * @return Length of the shortest path from v to w. Integer.MAX_VALUE if w
+	 *         is not reachable from v
+	 */
+	public int distance(int v, int w);
+
+	/**
+	 * Determine number of vertices
+	 * 
+	 * @return Number of vertices of the underlying graph
+	 */
+	public int V();
+}
@@ -0,0 +1,256 @@
+package org.iiitb.graphs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * All-pairs shortest-path distances of a graph read from a memory-mapped
+ * binary file, so that they are computed once and then shared through the
+ * page cache by every process using the same graph. The graph itself is
+ * stored too, so it need not be parsed again. The file holds
+ * 
+ * <pre>
+ * int    MAGIC, VERSION, V, E
+ * long   Length and CRC32 of the text the graph was parsed from
+ * long   CRC32 of everything that follows
+ * int    offset[V + 1], to[E]     CSR form of the graph
+ * double weight[E]
+ * int    dist[V * V]              Row-major distance matrix
+ * </pre>
+ * 
+ * A file written by another version or of the wrong size is rejected. The
+ * checksum of the contents is written always, but only checked on request,
+ * as it reads all V * V distances. A snapshot is matched to its graph by the
+ * checksum of the source text instead.
+ */
+public class DistanceSnapshot implements DistanceOracle
+{
+	private static final int MAGIC = 0x44415253; // "DARS"
+	private static final int VERSION = 2;
+	private static final int HEADER = 4 * 4 + 3 * 8; // Bytes
+
+	private final int V, E;
+	private final ByteBuffer b; // The whole file
+	private final IntBuffer dist;
+
+	private DistanceSnapshot(int V, int E, ByteBuffer b)
+	{
+		this.V = V;
+		this.E = E;
+		this.b = b;
+		long pos = HEADER + 4L * (V + 1) + 4L * E + 8L * E;
+		dist = slice(b, (int) pos, 4 * V * V).asIntBuffer();
+	}
+
+	/**
+	 * Map a snapshot file
+	 * 
+	 * @param fileName The snapshot file
+	 * @param verify Whether to check the checksum of the whole file, which
+	 *            reads every distance
+	 * @return The snapshot. null if the file does not exist or is not a valid
+	 *         snapshot
+	 * @throws IOException
+	 */
+	public static DistanceSnapshot open(String fileName, boolean verify)
+			throws IOException
+	{
+		MappedByteBuffer b;
+		try (FileChannel ch = FileChannel.open(Paths.get(fileName),
+				StandardOpenOption.READ))
+		{
+			if (ch.size() < HEADER || ch.size() > Integer.MAX_VALUE)
+				return null;
+			b = ch.map(MapMode.READ_ONLY, 0, ch.size());
+		}
+		catch (NoSuchFileException e)
+		{
+			return null;
+		}
+
+		int V = b.getInt(8), E = b.getInt(12);
+		if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION || V < 0 || E < 0
+				|| b.capacity() != size(V, E))
+			return null;
+		if (verify && b.getLong(32) != checksum(b))
+			return null;
+		return new DistanceSnapshot(V, E, b);
+	}
+
+	/**
+	 * Check whether this snapshot is of the graph parsed from some text, by
+	 * the length and the checksum of the text
+	 * 
+	 * @param source The file holding the text
+	 * @param position Offset of the text in the file
+	 * @return Is the text at position that of the graph of the snapshot?
+	 * @throws IOException
+	 */
+	public boolean isOf(String source, long position) throws IOException
+	{
+		try (FileChannel ch = FileChannel.open(Paths.get(source),
+				StandardOpenOption.READ))
+		{
+			return position + sourceLength() <= ch.size()
+					&& checksum(ch, position, sourceLength()) == b.getLong(24);
+		}
+	}
+
+	/**
+	 * @return Length in bytes of the text the graph was parsed from
+	 */
+	public long sourceLength()
+	{
+		return b.getLong(16);
+	}
+
+	/**
+	 * @return The graph, copied out of the snapshot
+	 */
+	public CSRDigraph graph()
+	{
+		int[] offset = new int[V + 1], to = new int[E];
+		double[] weight = new double[E];
+		int pos = HEADER;
+		slice(b, pos, 4 * (V + 1)).asIntBuffer().get(offset);
+		pos += 4 * (V + 1);
+		slice(b, pos, 4 * E).asIntBuffer().get(to);
+		pos += 4 * E;
+		slice(b, pos, 8 * E).asDoubleBuffer().get(weight);
+		return new CSRDigraph(V, offset, to, weight);
+	}
+
+	/**
+	 * Write a snapshot of a graph and its distances. The file is replaced
+	 * atomically, so a process opening it never sees it half written
+	 * 
+	 * @param fileName The snapshot file
+	 * @param G The graph
+	 * @param distances Distances between all pairs of vertices of {@code G}
+	 * @param source The file {@code G} was parsed from
+	 * @param position Offset in it of the text of {@code G}
+	 * @param length Length of the text
+	 * @throws IOException
+	 */
+	public static void write(String fileName, CSRDigraph G,
+			DistanceOracle distances, String source, long position,
+			long length) throws IOException
+	{
+		int V = G.V(), E = G.E();
+		if (size(V, E) > Integer.MAX_VALUE)
+			throw new IOException("Graph of " + V + " vertices and " + E
+					+ " edges is too large for a snapshot");
+		long sourceChecksum;
+		try (FileChannel ch = FileChannel.open(Paths.get(source),
+				StandardOpenOption.READ))
+		{
+			sourceChecksum = checksum(ch, position, length);
+		}
+
+		Path file = Paths.get(fileName).toAbsolutePath();
+		Path tmp = Files.createTempFile(file.getParent(), ".snapshot", null);
+		try
+		{
+			try (FileChannel ch = FileChannel.open(tmp,
+					StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				MappedByteBuffer b = ch.map(MapMode.READ_WRITE, 0, size(V, E));
+				b.putInt(MAGIC).putInt(VERSION).putInt(V).putInt(E);
+				b.putLong(length).putLong(sourceChecksum).putLong(0);
+				for (int v = 0; v <= V; v++)
+					b.putInt(v < V ? G.begin(v) : E);
+				for (int e = 0; e < E; e++)
+					b.putInt(G.to(e));
+				for (int e = 0; e < E; e++)
+					b.putDouble(G.weight(e));
+				for (int v = 0; v < V; v++)
+					for (int w = 0; w < V; w++)
+						b.putInt(distances.distance(v, w));
+				b.putLong(32, checksum(b));
+				b.force();
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	// Size of the snapshot file of a graph in bytes
+	private static long size(int V, int E)
+	{
+		return HEADER + 4L * (V + 1) + 4L * E + 8L * E + 4L * V * V;
+	}
+
+	private static ByteBuffer slice(ByteBuffer b, int pos, int length)
+	{
+		ByteBuffer d = b.duplicate();
+		d.position(pos);
+		d.limit(pos + length);
+		return d.slice();
+	}
+
+	// CRC32 of the bytes of b following the header
+	private static long checksum(ByteBuffer b)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(slice(b, HEADER, b.capacity() - HEADER));
+		return crc.getValue();
+	}
+
+	// CRC32 of length bytes of a file from position on
+	private static long checksum(FileChannel ch, long position, long length)
+			throws IOException
+	{
+		CRC32 crc = new CRC32();
+		ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+		for (long end = position + length; position < end;)
+		{
+			chunk.clear();
+			chunk.limit((int) Math.min(chunk.capacity(), end - position));
+			int n = ch.read(chunk, position);
+			if (n < 0)
+				throw new IOException("Unexpected end of file");
+			position += n;
+			chunk.flip();
+			crc.update(chunk);
+		}
+		return crc.getValue();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see DistanceOracle#distance(int, int)
+	 */
+	@Override
+	public int distance(int v, int w)
+	{
+		return dist.get(v * V + w);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see DistanceOracle#V()
+	 */
+	@Override
+	public int V()
+	{
+		return V;
+	}
+}
@@ -1,5 +1,6 @@
 package org.iiitb.graphs;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -42,7 +43,7 @@ public class EdgeWeightedDigraph
 
 	public Iterable<DirectedEdge> edges()
 	{
-		List<DirectedEdge> b = new LinkedList<DirectedEdge>();
+		List<DirectedEdge> b = new ArrayList<DirectedEdge>(E);
 		for (int v = 0; v < V; v++)
 			for (DirectedEdge e : adj[v])
 				b.add(e);
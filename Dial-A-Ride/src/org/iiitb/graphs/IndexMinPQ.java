@@ -0,0 +1,168 @@
+package org.iiitb.graphs;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of {@code double} keys, each associated with an index
+ * between 0 and maxN - 1. The position of every index in the heap is tracked
+ * so that contains() is O(1) and decreaseKey() is O(log n)
+ */
+public class IndexMinPQ
+{
+	private int n; // Number of indices on the PQ
+	private int[] pq; // Binary heap of indices, 1-based
+	private int[] qp; // qp[pq[i]] = pq[qp[i]] = i. -1 if i is not on the PQ
+	private double[] keys; // keys[i] is the priority of i
+
+	/**
+	 * Create an empty PQ for indices between 0 and maxN - 1
+	 * 
+	 * @param maxN Number of indices
+	 */
+	public IndexMinPQ(int maxN)
+	{
+		n = 0;
+		pq = new int[maxN + 1];
+		qp = new int[maxN];
+		keys = new double[maxN];
+		for (int i = 0; i < maxN; i++)
+			qp[i] = -1;
+	}
+
+	public boolean isEmpty()
+	{
+		return n == 0;
+	}
+
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * Determines if index i is on the PQ
+	 * 
+	 * @param i The index
+	 * @return Is i on the PQ?
+	 */
+	public boolean contains(int i)
+	{
+		return qp[i] != -1;
+	}
+
+	/**
+	 * Associate {@code key} with index i
+	 * 
+	 * @param i The index
+	 * @param key Priority of i
+	 */
+	public void insert(int i, double key)
+	{
+		if (contains(i))
+			throw new IllegalArgumentException("Index " + i
+					+ " is already on the PQ");
+		n++;
+		qp[i] = n;
+		pq[n] = i;
+		keys[i] = key;
+		swim(n);
+	}
+
+	/**
+	 * Lower the key associated with index i
+	 * 
+	 * @param i The index
+	 * @param key New priority of i. Must not be greater than the current one
+	 */
+	public void decreaseKey(int i, double key)
+	{
+		if (!contains(i))
+			throw new NoSuchElementException("Index " + i + " is not on the PQ");
+		if (key > keys[i])
+			throw new IllegalArgumentException("Key " + key
+					+ " is greater than the current key " + keys[i]);
+		keys[i] = key;
+		swim(qp[i]);
+	}
+
+	public double keyOf(int i)
+	{
+		if (!contains(i))
+			throw new NoSuchElementException("Index " + i + " is not on the PQ");
+		return keys[i];
+	}
+
+	/**
+	 * @return The smallest key
+	 */
+	public double minKey()
+	{
+		if (n == 0)
+			throw new NoSuchElementException("PQ underflow");
+		return keys[pq[1]];
+	}
+
+	/**
+	 * Remove every index. Takes time proportional to the number of indices on
+	 * the PQ rather than to maxN
+	 */
+	public void clear()
+	{
+		for (int i = 1; i <= n; i++)
+			qp[pq[i]] = -1;
+		n = 0;
+	}
+
+	/**
+	 * Remove the index with the smallest key
+	 * 
+	 * @return The index with the smallest key
+	 */
+	public int delMin()
+	{
+		if (n == 0)
+			throw new NoSuchElementException("PQ underflow");
+		int min = pq[1];
+		exch(1, n--);
+		sink(1);
+		qp[min] = -1;
+		return min;
+	}
+
+	private boolean greater(int i, int j)
+	{
+		return keys[pq[i]] > keys[pq[j]];
+	}
+
+	private void exch(int i, int j)
+	{
+		int swap = pq[i];
+		pq[i] = pq[j];
+		pq[j] = swap;
+		qp[pq[i]] = i;
+		qp[pq[j]] = j;
+	}
+
+	private void swim(int k)
+	{
+		while (k > 1 && greater(k / 2, k))
+		{
+			exch(k, k / 2);
+			k = k / 2;
+		}
+	}
+
+	private void sink(int k)
+	{
+		while (2 * k <= n)
+		{
+			int j = 2 * k;
+			if (j < n && greater(j, j + 1))
+				j++;
+			if (!greater(k, j))
+				break;
+			exch(k, j);
+			k = j;
+		}
+	}
+}
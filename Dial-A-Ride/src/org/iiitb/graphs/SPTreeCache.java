@@ -0,0 +1,162 @@
+package org.iiitb.graphs;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shortest-path distances of an {@link EdgeWeightedDigraph} computed lazily,
+ * one source at a time, and held in a cache bounded by memory. Suits maps too
+ * large for a {@link DistanceMatrix} where queries repeatedly come from a
+ * small set of hot sources.
+ *
+ * The cache may be shared between threads. Hits take no lock, and misses are
+ * computed on a workspace of the thread, so only adding a source and
+ * evicting another are serialised. Sources are evicted by the CLOCK
+ * approximation of least-recently-used : the cached sources sit in a ring
+ * swept by a hand, which evicts the first source not used since the hand
+ * last went by
+ */
+public class SPTreeCache implements DistanceOracle
+{
+	private final CSRDigraph G;
+	private final ThreadLocal<SingleSourceSP> workspace; // Reused for misses
+	private final int capacity; // Maximum number of cached sources
+	private final ConcurrentHashMap<Integer, int[]> cache;
+
+	// Guarded by the ring
+	private final int[] ring; // Cached sources
+	private int nCached; // Sources in the ring
+	private int hand; // Position in the ring of the next source considered
+	// Of each vertex, whether its distances were used since the hand went by.
+	// Set without locking, as a lost update only changes which source goes
+	private final boolean[] used;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param G The graph
+	 * @param maxBytes Upper bound on the memory taken by cached distances.
+	 *            At least one source is always cached
+	 */
+	public SPTreeCache(EdgeWeightedDigraph G, long maxBytes)
+	{
+		final CSRDigraph csr = new CSRDigraph(G);
+		this.G = csr;
+		workspace = new ThreadLocal<SingleSourceSP>()
+		{
+			@Override
+			protected SingleSourceSP initialValue()
+			{
+				return SingleSourceSP.workspace(csr);
+			}
+		};
+		long bytesPerSource = 4L * Math.max(G.V(), 1);
+		capacity = (int) Math.max(1,
+				Math.min(maxBytes / bytesPerSource, G.V()));
+		cache = new ConcurrentHashMap<Integer, int[]>();
+		ring = new int[capacity];
+		used = new boolean[G.V()];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see DistanceOracle#distance(int, int)
+	 */
+	@Override
+	public int distance(int v, int w)
+	{
+		int[] dist = cache.get(v);
+		if (dist != null)
+		{
+			hits.increment();
+			used[v] = true;
+		}
+		else
+		{
+			misses.increment();
+			dist = distancesFrom(v);
+			add(v, dist);
+		}
+		return dist[w];
+	}
+
+	private int[] distancesFrom(int s)
+	{
+		SingleSourceSP sp = workspace.get();
+		sp.search(s);
+		int[] dist = new int[G.V()];
+		for (int w = 0; w < dist.length; w++)
+			dist[w] = sp.distance(w);
+		return dist;
+	}
+
+	// Cache the distances of a source, evicting another if the cache is full
+	private void add(int v, int[] dist)
+	{
+		synchronized (ring)
+		{
+			if (cache.putIfAbsent(v, dist) != null)
+				return; // Computed by another thread meanwhile
+			used[v] = true;
+			if (nCached < capacity)
+			{
+				ring[nCached++] = v;
+				return;
+			}
+			// Sources used since the hand last went by get a second chance
+			while (used[ring[hand]])
+			{
+				used[ring[hand]] = false;
+				hand = (hand + 1) % capacity;
+			}
+			cache.remove(ring[hand]);
+			evictions.increment();
+			ring[hand] = v;
+			hand = (hand + 1) % capacity;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see DistanceOracle#V()
+	 */
+	@Override
+	public int V()
+	{
+		return G.V();
+	}
+
+	/**
+	 * @return Maximum number of sources whose distances are cached
+	 */
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	public long hits()
+	{
+		return hits.sum();
+	}
+
+	public long misses()
+	{
+		return misses.sum();
+	}
+
+	public long evictions()
+	{
+		return evictions.sum();
+	}
+
+	public String toString()
+	{
+		return "Shortest-path cache : " + cache.size() + "/" + capacity
+				+ " sources, " + hits() + " hits, " + misses() + " misses, "
+				+ evictions() + " evictions";
+	}
+}
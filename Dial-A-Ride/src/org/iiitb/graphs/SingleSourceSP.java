@@ -0,0 +1,34 @@
+package org.iiitb.graphs;
+
+/**
+ * A workspace computing the shortest paths from one source at a time, reused
+ * across sources so that nothing is allocated per search
+ */
+interface SingleSourceSP
+{
+	/**
+	 * Discard the distances computed so far and compute those from s
+	 * 
+	 * @param s The source
+	 */
+	void search(int s);
+
+	/**
+	 * @param v A vertex
+	 * @return Length of the shortest path from the source to v.
+	 *         Integer.MAX_VALUE if there is none
+	 */
+	int distance(int v);
+
+	/**
+	 * @param G The graph
+	 * @return A {@link DialSP} if the weights of G are small enough integers
+	 *         and a {@link DijkstraSP} otherwise
+	 */
+	static SingleSourceSP workspace(CSRDigraph G)
+	{
+		if (DialSP.accepts(G))
+			return new DialSP(G);
+		return new DijkstraSP(G);
+	}
+}
@@ -0,0 +1,120 @@
+package org.iiitb.graphs;
+
+import java.util.Arrays;
+
+/**
+ * Splits the vertices of a graph into zones around centres spread as far
+ * apart as the shortest paths allow. Centres are picked one at a time, each
+ * being the vertex farthest from those already picked, and every vertex then
+ * joins the zone of the centre nearest to it. Only distances from the
+ * centres are looked up, so a {@link SPTreeCache} computes one tree a zone
+ */
+public class ZonePartition
+{
+	private final int[] zone; // Zone of each vertex
+	private final int[] centres;
+	private final int[] size; // Vertices in each zone
+
+	/**
+	 * @param distances Distances between the vertices
+	 * @param k Number of zones wanted. Fewer are made if fewer vertices are
+	 *            reachable from the first centre
+	 */
+	public ZonePartition(DistanceOracle distances, int k)
+	{
+		if (k < 1)
+			throw new IllegalArgumentException("Number of zones : " + k);
+		int V = distances.V();
+		zone = new int[V];
+
+		// Distance of every vertex from the nearest centre so far
+		int[] nearest = new int[V];
+		int[] c = new int[k];
+		int nCentres = 0;
+		int centre = firstCentre(distances);
+		while (true)
+		{
+			c[nCentres] = centre;
+			for (int v = 0; v < V; v++)
+			{
+				int d = distances.distance(centre, v);
+				if (nCentres == 0 || d < nearest[v])
+				{
+					nearest[v] = d;
+					zone[v] = nCentres;
+				}
+			}
+			nCentres++;
+			if (nCentres == k)
+				break;
+
+			// The farthest vertex reachable from a centre
+			centre = -1;
+			for (int v = 0; v < V; v++)
+				if (nearest[v] != Integer.MAX_VALUE
+						&& (centre < 0 || nearest[v] > nearest[centre]))
+					centre = v;
+			if (nearest[centre] == 0)
+				break; // Every reachable vertex is a centre
+		}
+		centres = Arrays.copyOf(c, nCentres);
+		size = new int[nCentres];
+		for (int v = 0; v < V; v++)
+			size[zone[v]]++;
+	}
+
+	// The first vertex from which another can be reached. Vertices reached
+	// from no centre stay in the first zone
+	private static int firstCentre(DistanceOracle distances)
+	{
+		int V = distances.V();
+		for (int v = 0; v < V; v++)
+			for (int w = 0; w < V; w++)
+				if (w != v && distances.distance(v, w) != Integer.MAX_VALUE)
+					return v;
+		return 0;
+	}
+
+	/**
+	 * @return Number of zones
+	 */
+	public int zones()
+	{
+		return centres.length;
+	}
+
+	/**
+	 * @param v A vertex
+	 * @return Zone of v, from 0 to zones() - 1
+	 */
+	public int zone(int v)
+	{
+		return zone[v];
+	}
+
+	/**
+	 * @param z A zone
+	 * @return The vertex the zone is built around
+	 */
+	public int centre(int z)
+	{
+		return centres[z];
+	}
+
+	/**
+	 * @param z A zone
+	 * @return Number of vertices in the zone
+	 */
+	public int size(int z)
+	{
+		return size[z];
+	}
+
+	public String toString()
+	{
+		String str = centres.length + " zones :";
+		for (int z = 0; z < centres.length; z++)
+			str += " " + centres[z] + "(" + size[z] + ")";
+		return str;
+	}
+}